@@ -0,0 +1,26 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+/**
+ * A synthetic diagram: obstacles as consecutive x, y, width, height quads and
+ * one x1, y1, x2, y2 row per connection.
+ */
+public final class Diagram {
+
+	public final int[] obstacles;
+	public final int[][] connections;
+
+	Diagram(int[] obstacles, int[][] connections) {
+		this.obstacles = obstacles;
+		this.connections = connections;
+	}
+
+	/**
+	 * Returns the number of obstacles.
+	 * 
+	 * @return the obstacle count
+	 */
+	public int obstacleCount() {
+		return obstacles.length / 4;
+	}
+
+}
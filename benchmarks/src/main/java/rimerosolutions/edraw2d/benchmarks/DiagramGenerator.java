@@ -0,0 +1,146 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible synthetic diagrams. The same layout, sizes and seed
+ * always give the same diagram. Connections run between the centers of two
+ * obstacles, like the connections of a view run between its elements.
+ */
+public final class DiagramGenerator {
+
+	/**
+	 * Boxes on a regular grid with equal gaps, like a tidy layered view.
+	 */
+	public static final String GRID = "grid";
+
+	/**
+	 * Boxes of random sizes at random positions, overlaps included.
+	 */
+	public static final String SCATTER = "scatter";
+
+	/**
+	 * Tight groups of boxes around a few centers, with little room to pass.
+	 */
+	public static final String CLUSTERS = "clusters";
+
+	/**
+	 * A long band of boxes three rows high, connected end to end.
+	 */
+	public static final String CORRIDOR = "corridor";
+
+	private DiagramGenerator() {
+	}
+
+	/**
+	 * Generates a diagram.
+	 * 
+	 * @param layout
+	 *            one of {@link #GRID}, {@link #SCATTER}, {@link #CLUSTERS} or
+	 *            {@link #CORRIDOR}
+	 * @param obstacleCount
+	 *            the number of obstacles
+	 * @param connectionCount
+	 *            the number of connections
+	 * @param seed
+	 *            the random seed
+	 * @return the diagram
+	 */
+	public static Diagram generate(String layout, int obstacleCount,
+			int connectionCount, long seed) {
+		Random random = new Random(seed);
+		int[] obstacles;
+		if (GRID.equals(layout))
+			obstacles = grid(obstacleCount);
+		else if (SCATTER.equals(layout))
+			obstacles = scatter(obstacleCount, random);
+		else if (CLUSTERS.equals(layout))
+			obstacles = clusters(obstacleCount, random);
+		else if (CORRIDOR.equals(layout))
+			obstacles = corridor(obstacleCount, random);
+		else
+			throw new IllegalArgumentException("Unknown layout: " + layout);
+
+		boolean endToEnd = CORRIDOR.equals(layout);
+		int[][] connections = new int[connectionCount][];
+		for (int i = 0; i < connectionCount; i++) {
+			int source, target;
+			if (endToEnd) {
+				// from the first tenth of the band to the last tenth
+				int tenth = Math.max(1, obstacleCount / 10);
+				source = random.nextInt(tenth);
+				target = obstacleCount - 1 - random.nextInt(tenth);
+			} else {
+				source = random.nextInt(obstacleCount);
+				target = random.nextInt(obstacleCount);
+			}
+			connections[i] = new int[] { centerX(obstacles, source),
+					centerY(obstacles, source), centerX(obstacles, target),
+					centerY(obstacles, target) };
+		}
+		return new Diagram(obstacles, connections);
+	}
+
+	private static int centerX(int[] obstacles, int i) {
+		return obstacles[4 * i] + obstacles[4 * i + 2] / 2;
+	}
+
+	private static int centerY(int[] obstacles, int i) {
+		return obstacles[4 * i + 1] + obstacles[4 * i + 3] / 2;
+	}
+
+	private static int[] grid(int n) {
+		int columns = (int) Math.ceil(Math.sqrt(n));
+		int[] obstacles = new int[4 * n];
+		for (int i = 0; i < n; i++) {
+			obstacles[4 * i] = 40 + (i % columns) * 180;
+			obstacles[4 * i + 1] = 40 + (i / columns) * 120;
+			obstacles[4 * i + 2] = 120;
+			obstacles[4 * i + 3] = 55;
+		}
+		return obstacles;
+	}
+
+	private static int[] scatter(int n, Random random) {
+		int side = (int) Math.ceil(Math.sqrt(n)) * 180;
+		int[] obstacles = new int[4 * n];
+		for (int i = 0; i < n; i++) {
+			obstacles[4 * i] = random.nextInt(side);
+			obstacles[4 * i + 1] = random.nextInt(side);
+			obstacles[4 * i + 2] = 40 + random.nextInt(80);
+			obstacles[4 * i + 3] = 30 + random.nextInt(50);
+		}
+		return obstacles;
+	}
+
+	private static int[] clusters(int n, Random random) {
+		int clusterCount = Math.max(1, n / 25);
+		int side = (int) Math.ceil(Math.sqrt(clusterCount)) * 600;
+		int[] centers = new int[2 * clusterCount];
+		for (int i = 0; i < centers.length; i++)
+			centers[i] = 300 + random.nextInt(side);
+
+		int[] obstacles = new int[4 * n];
+		for (int i = 0; i < n; i++) {
+			int c = random.nextInt(clusterCount);
+			obstacles[4 * i] = centers[2 * c] + (int) (random.nextGaussian() * 90);
+			obstacles[4 * i + 1] = centers[2 * c + 1]
+					+ (int) (random.nextGaussian() * 90);
+			obstacles[4 * i + 2] = 50 + random.nextInt(60);
+			obstacles[4 * i + 3] = 30 + random.nextInt(30);
+		}
+		return obstacles;
+	}
+
+	private static int[] corridor(int n, Random random) {
+		int[] obstacles = new int[4 * n];
+		for (int i = 0; i < n; i++) {
+			obstacles[4 * i] = 40 + (i / 3) * 150 + random.nextInt(30);
+			obstacles[4 * i + 1] = 40 + (i % 3) * 90 + random.nextInt(20);
+			obstacles[4 * i + 2] = 100;
+			obstacles[4 * i + 3] = 50;
+		}
+		return obstacles;
+	}
+
+}
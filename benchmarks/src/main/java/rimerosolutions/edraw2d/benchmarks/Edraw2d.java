@@ -0,0 +1,246 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Calls into the library from benchmark code. The library classes live in the
+ * default package, which code in a named package cannot refer to, and JMH
+ * does not accept benchmarks in the default package. The calls therefore go
+ * through method handles held in constants, which the JIT inlines like
+ * direct calls.
+ */
+final class Edraw2d {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodHandle NEW_RECTANGLE = constructor("RRectangle",
+			int.class, int.class, int.class, int.class);
+	private static final MethodHandle NEW_POINT = constructor("RPoint",
+			int.class, int.class);
+	private static final MethodHandle NEW_ROUTER = constructor("RShortestPathRouter");
+	private static final MethodHandle NEW_PATH = constructor("RPath",
+			type("RPoint"), type("RPoint"));
+	private static final MethodHandle NEW_OBSTACLE = constructor("RObstacle",
+			type("RRectangle"), type("RShortestPathRouter"));
+	private static final MethodHandle NEW_RROUTER = constructor("RRouter");
+
+	private static final MethodHandle ADD_OBSTACLE = method(
+			"RShortestPathRouter", "addObstacle", type("RRectangle"));
+	private static final MethodHandle UPDATE_OBSTACLE = method(
+			"RShortestPathRouter", "updateObstacle", type("RRectangle"),
+			type("RRectangle"));
+	private static final MethodHandle ADD_PATH = method("RShortestPathRouter",
+			"addPath", type("RPath"));
+	private static final MethodHandle SOLVE = method("RShortestPathRouter",
+			"solve");
+	private static final MethodHandle GET_POINTS = method("RPath", "getPoints");
+	private static final MethodHandle REFRESH_EXCLUDED_OBSTACLES = method(
+			"RPath", "refreshExcludedObstacles", List.class);
+	private static final MethodHandle FULL_RESET = method("RPath", "fullReset");
+	private static final MethodHandle GENERATE_SHORTEST_PATH = method("RPath",
+			"generateShortestPath", List.class);
+	private static final MethodHandle SOLVE_FOR = method("RRouter",
+			"solveFor", List.class, List.class, int.class, int.class,
+			int.class, int.class);
+	private static final MethodHandle NEW_ROUTING_CACHE = constructor(
+			"RRoutingCache", int.class, long.class);
+	private static final MethodHandle SET_CACHE = method("RRouter",
+			"setCache", type("RRoutingCache"));
+	private static final MethodHandle LINES_INTERSECT = method("RGeometry",
+			"linesIntersect", int.class, int.class, int.class, int.class,
+			int.class, int.class, int.class, int.class);
+
+	private Edraw2d() {
+	}
+
+	private static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static <T extends AccessibleObject> T accessible(T member) {
+		// some of the benchmarked members are package-private
+		member.setAccessible(true);
+		return member;
+	}
+
+	private static MethodHandle constructor(String className,
+			Class<?>... parameterTypes) {
+		try {
+			Constructor<?> c = type(className).getDeclaredConstructor(
+					parameterTypes);
+			MethodHandle handle = LOOKUP.unreflectConstructor(accessible(c));
+			return handle.asType(handle.type().erase());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle method(String className, String name,
+			Class<?>... parameterTypes) {
+		try {
+			Method m = type(className).getDeclaredMethod(name, parameterTypes);
+			MethodHandle handle = LOOKUP.unreflect(accessible(m));
+			return handle.asType(handle.type().erase());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static RuntimeException rethrow(Throwable t) {
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		return new IllegalStateException(t);
+	}
+
+	static Object newRectangle(int x, int y, int w, int h) {
+		try {
+			return (Object) NEW_RECTANGLE.invokeExact(x, y, w, h);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newRectangle(int[] obstacles, int i) {
+		return newRectangle(obstacles[4 * i], obstacles[4 * i + 1],
+				obstacles[4 * i + 2], obstacles[4 * i + 3]);
+	}
+
+	static Object newRouter() {
+		try {
+			return (Object) NEW_ROUTER.invokeExact();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newPath(int[] connection) {
+		try {
+			Object start = (Object) NEW_POINT.invokeExact(connection[0],
+					connection[1]);
+			Object end = (Object) NEW_POINT.invokeExact(connection[2],
+					connection[3]);
+			return (Object) NEW_PATH.invokeExact(start, end);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newObstacle(Object rectangle, Object router) {
+		try {
+			return (Object) NEW_OBSTACLE.invokeExact(rectangle, router);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object newRRouter() {
+		try {
+			return (Object) NEW_RROUTER.invokeExact();
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static boolean addObstacle(Object router, Object rectangle) {
+		try {
+			return (boolean) ADD_OBSTACLE.invokeExact(router, rectangle);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static boolean updateObstacle(Object router, Object oldBounds,
+			Object newBounds) {
+		try {
+			return (boolean) UPDATE_OBSTACLE.invokeExact(router, oldBounds,
+					newBounds);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void addPath(Object router, Object path) {
+		try {
+			ADD_PATH.invokeExact(router, path);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object solve(Object router) {
+		try {
+			return (Object) SOLVE.invokeExact(router);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object getPoints(Object path) {
+		try {
+			return (Object) GET_POINTS.invokeExact(path);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static boolean generateShortestPath(Object path, List<Object> obstacles) {
+		try {
+			REFRESH_EXCLUDED_OBSTACLES.invokeExact(path, (Object) obstacles);
+			FULL_RESET.invokeExact(path);
+			return (boolean) GENERATE_SHORTEST_PATH.invokeExact(path,
+					(Object) obstacles);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static Object solveFor(Object rrouter, List<Object> obstacles,
+			List<Object> bendpoints, int x1, int y1, int x2, int y2) {
+		try {
+			return (Object) SOLVE_FOR.invokeExact(rrouter, (Object) obstacles,
+					(Object) bendpoints, x1, y1, x2, y2);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void setCache(int maxEntries, long maxBytes) {
+		try {
+			Object cache = (Object) NEW_ROUTING_CACHE.invokeExact(maxEntries,
+					maxBytes);
+			SET_CACHE.invokeExact(cache);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static void removeCache() {
+		try {
+			SET_CACHE.invokeExact((Object) null);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+	static boolean linesIntersect(int x1, int y1, int x2, int y2, int x3,
+			int y3, int x4, int y4) {
+		try {
+			return (boolean) LINES_INTERSECT.invokeExact(x1, y1, x2, y2, x3,
+					y3, x4, y4);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>RGeometry.linesIntersect</code> on random segment pairs, a
+ * mix of crossing, disjoint and bounding-box-rejected cases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RGeometryBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	private int[] coordinates;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		coordinates = new int[PAIRS * 8];
+		for (int i = 0; i < coordinates.length; i++)
+			coordinates[i] = random.nextInt(1000);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int linesIntersect() {
+		int[] c = coordinates;
+		int count = 0;
+		for (int i = 0; i < c.length; i += 8)
+			if (Edraw2d.linesIntersect(c[i], c[i + 1], c[i + 2], c[i + 3],
+					c[i + 4], c[i + 5], c[i + 6], c[i + 7]))
+				count++;
+		return count;
+	}
+
+}
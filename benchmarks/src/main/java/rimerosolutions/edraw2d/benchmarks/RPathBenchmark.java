@@ -0,0 +1,61 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>RPath.generateShortestPath</code> alone: building the
+ * visibility graph of one path and searching it, without any of the spacing
+ * steps of the router.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RPathBenchmark {
+
+	@Param({ "grid", "scatter", "clusters", "corridor" })
+	public String layout;
+
+	@Param({ "10", "100", "1000" })
+	public int obstacles;
+
+	private List<Object> obstacleList;
+	private Object[] paths;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Diagram diagram = DiagramGenerator.generate(layout, obstacles, 64, 1);
+		Object router = Edraw2d.newRouter();
+		obstacleList = new ArrayList<Object>(obstacles);
+		for (int i = 0; i < diagram.obstacleCount(); i++)
+			obstacleList.add(Edraw2d.newObstacle(
+					Edraw2d.newRectangle(diagram.obstacles, i), router));
+		paths = new Object[diagram.connections.length];
+		for (int i = 0; i < paths.length; i++)
+			paths[i] = Edraw2d.newPath(diagram.connections[i]);
+	}
+
+	@Benchmark
+	public boolean generateShortestPath() {
+		return Edraw2d.generateShortestPath(paths[next++ % paths.length],
+				obstacleList);
+	}
+
+}
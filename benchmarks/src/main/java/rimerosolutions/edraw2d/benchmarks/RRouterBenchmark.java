@@ -0,0 +1,94 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>RRouter.solveFor</code> the way scripts call it: one
+ * connection per call, with the obstacles handed over as nested lists. The
+ * results are either routed every time with no routing cache set, or
+ * answered from the routing cache once every connection has been routed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RRouterBenchmark {
+
+	@Param({ "grid", "scatter", "clusters", "corridor" })
+	public String layout;
+
+	@Param({ "10", "100", "1000" })
+	public int obstacles;
+
+	private Object router;
+	private List<Object> obstacleList;
+	private int[][] connections;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Diagram diagram = DiagramGenerator.generate(layout, obstacles, 64, 1);
+		router = Edraw2d.newRRouter();
+		obstacleList = new ArrayList<Object>(obstacles);
+		for (int i = 0; i < diagram.obstacleCount(); i++)
+			obstacleList.add(Arrays.<Object> asList(diagram.obstacles[4 * i],
+					diagram.obstacles[4 * i + 1], diagram.obstacles[4 * i + 2],
+					diagram.obstacles[4 * i + 3]));
+		connections = diagram.connections;
+	}
+
+	/**
+	 * Sets the routing cache, which is shared by all routers and off unless
+	 * it is set, for the benchmarks that take this state only.
+	 */
+	@State(Scope.Thread)
+	public static class Cache {
+
+		@Setup
+		public void setUp() {
+			Edraw2d.setCache(256, 32 * 1024 * 1024L);
+		}
+
+		@TearDown
+		public void tearDown() {
+			Edraw2d.removeCache();
+		}
+
+	}
+
+	@Benchmark
+	public Object solveFor() {
+		return solveNext();
+	}
+
+	@Benchmark
+	public Object solveForCached(Cache cache) {
+		return solveNext();
+	}
+
+	private Object solveNext() {
+		int[] c = connections[next++ % connections.length];
+		return Edraw2d.solveFor(router, obstacleList,
+				Collections.<Object> emptyList(), c[0], c[1], c[2], c[3]);
+	}
+
+}
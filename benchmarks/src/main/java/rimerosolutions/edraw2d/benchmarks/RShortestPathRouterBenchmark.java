@@ -0,0 +1,82 @@
+package rimerosolutions.edraw2d.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>RShortestPathRouter.solve</code>, both a full solve of a
+ * fresh router and the incremental solve which follows moving one obstacle
+ * with <code>updateObstacle</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RShortestPathRouterBenchmark {
+
+	@Param({ "grid", "scatter", "clusters", "corridor" })
+	public String layout;
+
+	@Param({ "10", "100", "1000" })
+	public int obstacles;
+
+	@Param({ "50" })
+	public int connections;
+
+	private Diagram diagram;
+
+	private Object router;
+	private Object[] moveBounds;
+	private int moves;
+
+	@Setup
+	public void setUp() {
+		diagram = DiagramGenerator.generate(layout, obstacles, connections, 1);
+
+		router = newSolvedRouter();
+		// the obstacle in the middle of the list moves back and forth
+		int moved = diagram.obstacleCount() / 2;
+		int[] o = diagram.obstacles;
+		moveBounds = new Object[] {
+				Edraw2d.newRectangle(o, moved),
+				Edraw2d.newRectangle(o[4 * moved] + 25, o[4 * moved + 1] + 15,
+						o[4 * moved + 2], o[4 * moved + 3]) };
+	}
+
+	private Object newSolvedRouter() {
+		Object r = Edraw2d.newRouter();
+		for (int i = 0; i < diagram.obstacleCount(); i++)
+			Edraw2d.addObstacle(r, Edraw2d.newRectangle(diagram.obstacles, i));
+		for (int i = 0; i < diagram.connections.length; i++)
+			Edraw2d.addPath(r, Edraw2d.newPath(diagram.connections[i]));
+		Edraw2d.solve(r);
+		return r;
+	}
+
+	@Benchmark
+	public Object solveFull() {
+		return newSolvedRouter();
+	}
+
+	@Benchmark
+	public Object solveIncremental() {
+		Object from = moveBounds[moves & 1];
+		Object to = moveBounds[++moves & 1];
+		Edraw2d.updateObstacle(router, from, to);
+		return Edraw2d.solve(router);
+	}
+
+}
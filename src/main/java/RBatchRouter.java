@@ -0,0 +1,191 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes many independent views at once, for example when exporting a whole
+ * model. Each view is a job routed by {@link RRouter#solveForAll(int[], int[][])}
+ * and its result is handed back as a {@link CompletableFuture}.
+ * <P>
+ * From Java 21 on, every job runs on its own virtual thread; on older JDKs the
+ * jobs run on a pool of daemon threads. In both cases no more jobs are solved
+ * at the same time than the maximum parallelism, since solving is bound by the
+ * CPU. Virtual threads are looked up by reflection, so the class runs on
+ * any JDK from Java 8 on.
+ */
+public class RBatchRouter {
+
+	/**
+	 * The routing job of one view.
+	 */
+	public static class Job {
+		private final int[] obstacles;
+		private final int[][] connections;
+
+		/**
+		 * Creates a new job.
+		 *
+		 * @param obstacles
+		 *            the obstacles as consecutive x, y, width, height quads
+		 * @param connections
+		 *            one row per connection holding x1, y1, x2, y2 followed by
+		 *            the bendpoints as x, y pairs
+		 */
+		public Job(int[] obstacles, int[][] connections) {
+			this.obstacles = obstacles;
+			this.connections = connections;
+		}
+
+		/**
+		 * @return the obstacles as consecutive x, y, width, height quads
+		 */
+		public int[] getObstacles() {
+			return obstacles;
+		}
+
+		/**
+		 * @return one row per connection
+		 */
+		public int[][] getConnections() {
+			return connections;
+		}
+	}
+
+	private final RRouter router = new RRouter();
+	private final ExecutorService executor;
+	private final Semaphore solving;
+	private final int parallelism;
+
+	/**
+	 * Creates a new batch router solving as many jobs at the same time as
+	 * there are processors.
+	 */
+	public RBatchRouter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new batch router.
+	 *
+	 * @param parallelism
+	 *            the maximum number of jobs solved at the same time
+	 */
+	public RBatchRouter(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be positive"); //$NON-NLS-1$
+		this.parallelism = parallelism;
+		solving = new Semaphore(parallelism);
+		ExecutorService virtualThreads = newVirtualThreadExecutor();
+		executor = virtualThreads != null ? virtualThreads : Executors
+				.newFixedThreadPool(parallelism, new DaemonThreadFactory());
+	}
+
+	/**
+	 * Returns the maximum number of jobs solved at the same time.
+	 *
+	 * @return the parallelism
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Submits the routing job of one view.
+	 *
+	 * @param obstacles
+	 *            the obstacles as consecutive x, y, width, height quads
+	 * @param connections
+	 *            one row per connection holding x1, y1, x2, y2 followed by the
+	 *            bendpoints as x, y pairs
+	 * @return the future holding one row of solved x, y pairs per connection
+	 */
+	public CompletableFuture submit(int[] obstacles, int[][] connections) {
+		return submit(new Job(obstacles, connections));
+	}
+
+	/**
+	 * Submits the routing job of one view. A job cancelled through its future
+	 * before it starts is not solved.
+	 *
+	 * @param job
+	 *            the job
+	 * @return the future holding one row of solved x, y pairs per connection
+	 */
+	public CompletableFuture submit(final Job job) {
+		final CompletableFuture result = new CompletableFuture();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					solving.acquire();
+				} catch (InterruptedException e) {
+					result.completeExceptionally(e);
+					return;
+				}
+				try {
+					if (!result.isDone())
+						result.complete(router.solveForAll(job.getObstacles(),
+								job.getConnections()));
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				} finally {
+					solving.release();
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Submits the routing jobs of many views, in order.
+	 *
+	 * @param jobs
+	 *            the {@link Job jobs}
+	 * @return the list of futures, in the order of the jobs
+	 */
+	public List submitAll(Iterator jobs) {
+		List result = new ArrayList();
+		while (jobs.hasNext())
+			result.add(submit((Job) jobs.next()));
+		return result;
+	}
+
+	/**
+	 * Stops accepting jobs. The submitted jobs are still solved.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns an executor starting a virtual thread per task, or
+	 * <code>null</code> if the JDK has no virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor"); //$NON-NLS-1$
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "RBatchRouter-" //$NON-NLS-1$
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/**
+ * The visibility from one obstacle corner to the other corners, shared by
+ * the searches of all paths. For every corner tested so far it records the
+ * first obstacle blocking the segment between the two corners, ignoring the
+ * corners' own obstacles, or that nothing blocks it. The records stay valid
+ * until an obstacle is moved near the tested segments, or any obstacle is
+ * added or removed.
+ * <P>
+ * A corner records at most {@link #MAX_TARGETS} targets, in two tables of
+ * at most 256 references, about 2 KB with compressed references, so the
+ * records of a diagram take at most about 8 KB per obstacle. A corner with
+ * as many records forgets them all before recording another one.
+ * <P>
+ * Corners may be looked up by several searches at the same time.
+ *
+ * This class is for internal use only.
+ */
+class RCornerVisibility {
+
+	/** The record of a segment which no obstacle blocks */
+	static final Object VISIBLE = new Object();
+
+	/** The maximum number of targets recorded by a corner */
+	static final int MAX_TARGETS = 128;
+
+	private RVertex[] targets;
+	private Object[] blockers;
+	private int size;
+
+	/** The bounds of the corner and of the tested targets */
+	private int minX, minY, maxX, maxY;
+
+	private final RVertex corner;
+
+	/**
+	 * Creates the empty visibility of a corner.
+	 *
+	 * @param corner
+	 *            the corner
+	 */
+	RCornerVisibility(RVertex corner) {
+		this.corner = corner;
+	}
+
+	/**
+	 * Returns what blocks the segment from the corner to the given target.
+	 *
+	 * @param target
+	 *            another corner
+	 * @return the first blocking obstacle, {@link #VISIBLE}, or
+	 *         <code>null</code> if the segment has not been tested
+	 */
+	synchronized Object get(RVertex target) {
+		if (size == 0)
+			return null;
+		int mask = targets.length - 1;
+		for (int slot = hash(target) & mask; targets[slot] != null; slot = (slot + 1)
+				& mask)
+			if (targets[slot] == target)
+				return blockers[slot];
+		return null;
+	}
+
+	/**
+	 * Records what blocks the segment from the corner to the given target,
+	 * forgetting the other records first if there are {@link #MAX_TARGETS}.
+	 *
+	 * @param target
+	 *            another corner
+	 * @param blocker
+	 *            the first blocking obstacle or {@link #VISIBLE}
+	 */
+	synchronized void put(RVertex target, Object blocker) {
+		if (size == 0 || size >= MAX_TARGETS) {
+			targets = new RVertex[16];
+			blockers = new Object[16];
+			size = 0;
+			minX = maxX = corner.x;
+			minY = maxY = corner.y;
+		} else if (2 * (size + 1) > targets.length)
+			rehash();
+		int mask = targets.length - 1;
+		int slot = hash(target) & mask;
+		while (targets[slot] != null) {
+			if (targets[slot] == target) {
+				blockers[slot] = blocker;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		targets[slot] = target;
+		blockers[slot] = blocker;
+		size++;
+		minX = Math.min(minX, target.x);
+		minY = Math.min(minY, target.y);
+		maxX = Math.max(maxX, target.x);
+		maxY = Math.max(maxY, target.y);
+	}
+
+	/**
+	 * Forgets the tested segments if an obstacle with the given bounds may
+	 * cross any of them.
+	 *
+	 * @param bounds
+	 *            the bounds of a moved obstacle, or <code>null</code> to
+	 *            forget the tested segments in any case
+	 */
+	synchronized void invalidate(RRectangle bounds) {
+		if (size == 0)
+			return;
+		if (bounds != null
+				&& (bounds.x > maxX + 1 || bounds.right() < minX - 1
+						|| bounds.y > maxY + 1 || bounds.bottom() < minY - 1))
+			return;
+		targets = null;
+		blockers = null;
+		size = 0;
+	}
+
+	private void rehash() {
+		RVertex[] oldTargets = targets;
+		Object[] oldBlockers = blockers;
+		targets = new RVertex[2 * oldTargets.length];
+		blockers = new Object[targets.length];
+		int mask = targets.length - 1;
+		for (int i = 0; i < oldTargets.length; i++) {
+			if (oldTargets[i] == null)
+				continue;
+			int slot = hash(oldTargets[i]) & mask;
+			while (targets[slot] != null)
+				slot = (slot + 1) & mask;
+			targets[slot] = oldTargets[i];
+			blockers[slot] = oldBlockers[i];
+		}
+	}
+
+	private static int hash(RVertex vertex) {
+		int h = System.identityHashCode(vertex) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * The time budget of a solve, which may also be cancelled from another
+ * thread. Once expired, a deadline stays expired.
+ *
+ * This class is for internal use only.
+ */
+class RDeadline {
+
+	private final long end;
+	private final boolean timed;
+	private volatile boolean expired;
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new deadline.
+	 *
+	 * @param budget
+	 *            the time budget in milliseconds, or 0 for no time limit
+	 */
+	RDeadline(long budget) {
+		timed = budget > 0;
+		end = System.nanoTime() + budget * 1000000L;
+	}
+
+	/**
+	 * Expires this deadline now.
+	 */
+	void cancel() {
+		cancelled = true;
+		expired = true;
+	}
+
+	/**
+	 * Returns <code>true</code> if this deadline has been cancelled, rather
+	 * than expired by its time budget alone.
+	 *
+	 * @return <code>true</code> if cancelled
+	 */
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns <code>true</code> if the time budget is spent or the solve has
+	 * been cancelled.
+	 *
+	 * @return <code>true</code> if expired
+	 */
+	boolean isExpired() {
+		if (!expired && timed && System.nanoTime() - end >= 0)
+			expired = true;
+		return expired;
+	}
+
+}
@@ -19,7 +19,8 @@ public class RDimension implements Cloneable, java.io.Serializable {
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * A singleton for use in short calculations.
+	 * A singleton for use in short calculations. It is shared by all threads,
+	 * so code which may run on several threads must not use it.
 	 */
 	public static final RDimension SINGLETON = new RDimension();
 
@@ -135,12 +135,10 @@ public class RGeometry {
 		 * Point should be located inside Rectangle(x1 -+ tolerance, y1 -+
 		 * tolerance, x2 +- tolerance, y2 +- tolerance)
 		 */
-		RRectangle lineBounds = RRectangle.SINGLETON;
-		lineBounds.setSize(0, 0);
-		lineBounds.setLocation(x1, y1);
-		lineBounds.union(x2, y2);
-		lineBounds.expand(tolerance, tolerance);
-		if (!lineBounds.contains(px, py)) {
+		if (px < Math.min(x1, x2) - tolerance
+				|| px >= Math.max(x1, x2 + 1) + tolerance
+				|| py < Math.min(y1, y2) - tolerance
+				|| py >= Math.max(y1, y2 + 1) + tolerance) {
 			return false;
 		}
 
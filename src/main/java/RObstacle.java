@@ -9,6 +9,9 @@
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An obstacle representation for the ShortestPathRouting. This is a subclass of
  * Rectangle.
@@ -20,7 +23,11 @@
  */
 class RObstacle extends RRectangle {
 
-	boolean exclude;
+	int index;
+	/** The next obstacle added to the router with the same bounds */
+	RObstacle nextWithSameBounds;
+	/** The working paths bending around this obstacle after the last solve */
+	final List bendingPaths = new ArrayList(2);
 	RVertex topLeft, topRight, bottomLeft, bottomRight, center;
 	private RShortestPathRouter router;
 
@@ -52,19 +59,38 @@ class RObstacle extends RRectangle {
 		return router.getSpacing();
 	}
 
-	private void growVertex(RVertex vertex) {
+	private int growVertex(RVertex vertex) {
 		if (vertex.totalCount > 0)
-			vertex.grow();
+			return Math.abs(vertex.grow());
+		return 0;
 	}
 
 	/**
 	 * Grows all vertices on this obstacle.
+	 * 
+	 * @return the largest distance by which a vertex has moved on either axis
+	 */
+	int growVertices() {
+		int result = growVertex(topLeft);
+		result = Math.max(result, growVertex(topRight));
+		result = Math.max(result, growVertex(bottomLeft));
+		return Math.max(result, growVertex(bottomRight));
+	}
+
+	/**
+	 * Sets the position of this obstacle in the obstacle list and numbers its
+	 * corners accordingly.
+	 * 
+	 * @param index
+	 *            the position of this obstacle
+	 * @see RSearchContext
 	 */
-	void growVertices() {
-		growVertex(topLeft);
-		growVertex(topRight);
-		growVertex(bottomLeft);
-		growVertex(bottomRight);
+	void setIndex(int index) {
+		this.index = index;
+		topLeft.id = 4 * index;
+		topRight.id = 4 * index + 1;
+		bottomLeft.id = 4 * index + 2;
+		bottomRight.id = 4 * index + 3;
 	}
 
 	/**
@@ -79,8 +105,6 @@ class RObstacle extends RRectangle {
 		this.width = rect.width;
 		this.height = rect.height;
 
-		exclude = false;
-
 		topLeft = new RVertex(x, y, this);
 		topLeft.positionOnObstacle = RPositionConstants.NORTH_WEST;
 		topRight = new RVertex(x + width - 1, y, this);
@@ -92,6 +116,43 @@ class RObstacle extends RRectangle {
 		center = new RVertex(getCenter(), this);
 	}
 
+	/**
+	 * Moves this obstacle to the given bounds. Its vertices are moved rather
+	 * than replaced, and fully reset.
+	 * 
+	 * @param rect
+	 *            the new bounds of this obstacle
+	 */
+	void update(RRectangle rect) {
+		this.x = rect.x;
+		this.y = rect.y;
+		this.width = rect.width;
+		this.height = rect.height;
+
+		topLeft.relocate(x, y);
+		topRight.relocate(x + width - 1, y);
+		bottomLeft.relocate(x, y + height - 1);
+		bottomRight.relocate(x + width - 1, y + height - 1);
+		RPoint c = getCenter();
+		center.relocate(c.x, c.y);
+		reset();
+	}
+
+	/**
+	 * Forgets the visibility from the corners of this obstacle which an
+	 * obstacle with the given bounds may change.
+	 * 
+	 * @param bounds
+	 *            the bounds of a moved obstacle, or <code>null</code> to forget
+	 *            all the visibility
+	 */
+	void invalidateVisibility(RRectangle bounds) {
+		topLeft.visibility.invalidate(bounds);
+		topRight.visibility.invalidate(bounds);
+		bottomLeft.visibility.invalidate(bounds);
+		bottomRight.visibility.invalidate(bounds);
+	}
+
 	/**
 	 * Requests a full reset on all four vertices of this obstacle.
 	 */
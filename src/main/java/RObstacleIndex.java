@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the bounds of obstacles. Queries return the obstacles
+ * whose bounds intersect the queried region ordered by their
+ * {@link RObstacle#index index} in the obstacle list, so that a scan of the
+ * result visits obstacles in the same order as a scan of the full obstacle
+ * list, whatever the size of the region.
+ * 
+ * This class is for internal use only.
+ */
+class RObstacleIndex {
+
+	/**
+	 * The base 2 logarithm of the cell size.
+	 */
+	private static final int CELL_SHIFT = 7;
+
+	private final Map cells;
+	private final List obstacles;
+
+	/**
+	 * Creates a new index.
+	 * 
+	 * @param obstacles
+	 *            the list of all obstacles, each at its index. It is returned
+	 *            as is for queries covering more cells than there are
+	 *            obstacles.
+	 */
+	RObstacleIndex(List obstacles) {
+		this.obstacles = obstacles;
+		cells = new HashMap();
+	}
+
+	/**
+	 * Returns the hash key of a grid cell.
+	 * 
+	 * @param cx
+	 *            the column of the cell
+	 * @param cy
+	 *            the row of the cell
+	 * @return the key
+	 */
+	static Long key(int cx, int cy) {
+		// the odd multiplier keeps keys unique while spreading their hash codes
+		return Long.valueOf((((long) cx << 32) | (cy & 0xFFFFFFFFL))
+				* 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * Adds an obstacle to every cell covered by its bounds.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 */
+	void add(RObstacle obs) {
+		int cx2 = (obs.x + Math.max(obs.width - 1, 0)) >> CELL_SHIFT;
+		int cy2 = (obs.y + Math.max(obs.height - 1, 0)) >> CELL_SHIFT;
+		for (int cx = obs.x >> CELL_SHIFT; cx <= cx2; cx++)
+			for (int cy = obs.y >> CELL_SHIFT; cy <= cy2; cy++) {
+				Long key = key(cx, cy);
+				List cell = (List) cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList(4);
+					cells.put(key, cell);
+				}
+				cell.add(obs);
+			}
+	}
+
+	/**
+	 * Returns the obstacles whose bounds intersect the given region, ordered by
+	 * their index.
+	 * 
+	 * @param x1
+	 *            the smallest x coordinate of the region
+	 * @param y1
+	 *            the smallest y coordinate of the region
+	 * @param x2
+	 *            the largest x coordinate of the region
+	 * @param y2
+	 *            the largest y coordinate of the region
+	 * @param result
+	 *            a list to fill with the candidates, which is cleared first
+	 * @return the candidates, either <code>result</code> or, for regions
+	 *         covering a large share of the grid, the list of all obstacles
+	 *         which must not be modified
+	 */
+	List query(int x1, int y1, int x2, int y2, List result) {
+		int cx1 = x1 >> CELL_SHIFT;
+		int cy1 = y1 >> CELL_SHIFT;
+		int cx2 = x2 >> CELL_SHIFT;
+		int cy2 = y2 >> CELL_SHIFT;
+		if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) * 8 > obstacles.size())
+			return obstacles;
+
+		result.clear();
+		for (int cx = cx1; cx <= cx2; cx++)
+			for (int cy = cy1; cy <= cy2; cy++) {
+				List cell = (List) cells.get(key(cx, cy));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					RObstacle obs = (RObstacle) cell.get(i);
+					if (obs.x > x2 || obs.y > y2
+							|| obs.x + Math.max(obs.width - 1, 0) < x1
+							|| obs.y + Math.max(obs.height - 1, 0) < y1)
+						continue;
+					// report each obstacle only from the first cell of the
+					// overlap, which spares removing duplicates afterwards
+					if (Math.max(obs.x, x1) >> CELL_SHIFT != cx
+							|| Math.max(obs.y, y1) >> CELL_SHIFT != cy)
+						continue;
+					int j = result.size();
+					result.add(obs);
+					while (j > 0 && ((RObstacle) result.get(j - 1)).index > obs.index) {
+						result.set(j, result.get(j - 1));
+						j--;
+					}
+					result.set(j, obs);
+				}
+			}
+		return result;
+	}
+
+	/**
+	 * Returns the obstacles which may intersect the bounding box of the given
+	 * segment grown by the given margin.
+	 * 
+	 * @see #query(int, int, int, int, List)
+	 */
+	List query(RSegment segment, int margin, List result) {
+		return query(Math.min(segment.start.x, segment.end.x) - margin,
+				Math.min(segment.start.y, segment.end.y) - margin,
+				Math.max(segment.start.x, segment.end.x) + margin,
+				Math.max(segment.start.y, segment.end.y) + margin, result);
+	}
+
+	/**
+	 * Removes an obstacle from the index.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 */
+	void remove(RObstacle obs) {
+		int cx2 = (obs.x + Math.max(obs.width - 1, 0)) >> CELL_SHIFT;
+		int cy2 = (obs.y + Math.max(obs.height - 1, 0)) >> CELL_SHIFT;
+		for (int cx = obs.x >> CELL_SHIFT; cx <= cx2; cx++)
+			for (int cy = obs.y >> CELL_SHIFT; cy <= cy2; cy++) {
+				Long key = key(cx, cy);
+				List cell = (List) cells.get(key);
+				if (cell != null) {
+					for (int i = 0; i < cell.size(); i++)
+						if (cell.get(i) == obs) {
+							cell.remove(i);
+							break;
+						}
+					if (cell.isEmpty())
+						cells.remove(key);
+				}
+			}
+	}
+
+}
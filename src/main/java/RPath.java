@@ -48,10 +48,11 @@ public class RPath {
 
 	}
 
-	private static final RPoint CURRENT = new RPoint();
 	private static final double EPSILON = 1.04;
-	private static final RPoint NEXT = new RPoint();
 	private static final double OVAL_CONSTANT = 1.13;
+	/** The largest number of paths searched at once */
+	static final int MAX_GROUP_SIZE = 63;
+	private static final long COMPUTED = 1L << MAX_GROUP_SIZE;
 
 	/**
 	 * The bendpoint constraints. The path must go through these bendpoints.
@@ -62,6 +63,15 @@ public class RPath {
 	 * client object.
 	 */
 	public Object data;
+	/**
+	 * The obstacles around which this path bent after the last solve.
+	 */
+	List bendObstacles;
+	/**
+	 * The points this path had after the last solve which changed them, or
+	 * <code>null</code> if it has not been solved yet.
+	 */
+	int[] solvedPoints;
 	List excludedObstacles;
 	List grownSegments;
 	/**
@@ -70,10 +80,52 @@ public class RPath {
 	 */
 	public boolean isDirty = true;
 
+	/**
+	 * Whether the search expands vertices by their cost plus the straight line
+	 * distance to the end (A*) rather than by their cost alone.
+	 */
+	boolean isGoalDirected = false;
+	/**
+	 * Whether the last solve stopped at its deadline before this path was
+	 * fully solved.
+	 */
+	boolean isDegraded = false;
+	/**
+	 * Whether this path has been searched by a provisional solve, and not
+	 * post-processed since.
+	 */
+	boolean isProvisional = false;
 	boolean isInverted = false;
+	/**
+	 * Whether the visible neighbors of a vertex are computed only when the
+	 * search reaches it, rather than building the visibility graph up front.
+	 */
+	boolean isVisibilityLazy = false;
 	boolean isMarked = false;
 	RPointList points;
 
+	/**
+	 * The length of the shortest path found by the last search.
+	 */
+	double cost;
+
+	/**
+	 * The paths searched at once by the shortest path tree rooted at the start
+	 * of this path, or <code>null</code> if this path is searched alone.
+	 */
+	private List group;
+	/**
+	 * The threshold ovals of the paths of the group containing each corner,
+	 * as a bit mask over the paths, by corner id. The highest bit is set once
+	 * the mask of a corner has been computed.
+	 */
+	private long[] ovalMasks;
+	/**
+	 * The paths of the group for which each obstacle is in the visibility
+	 * graph, as a bit mask over the paths, by obstacle index.
+	 */
+	private long[] visibleMasks;
+
 	/**
 	 * The previous cost ratio of the path. The cost ratio is the actual path
 	 * length divided by the length from the start to the end.
@@ -82,6 +134,10 @@ public class RPath {
 	List segments;
 
 	private SegmentStack stack;
+	/**
+	 * Scratch list receiving the obstacles near a segment.
+	 */
+	private List candidates;
 	RVertex start, end;
 	private RPath subPath;
 	double threshold;
@@ -101,6 +157,8 @@ public class RPath {
 		stack = new SegmentStack();
 		visibleObstacles = new HashSet();
 		excludedObstacles = new ArrayList();
+		bendObstacles = new ArrayList();
+		candidates = new ArrayList();
 	}
 
 	/**
@@ -207,10 +265,7 @@ public class RPath {
 	 */
 	private void addConnectingSegment(RSegment segment, RObstacle o1,
 			RObstacle o2, boolean checkTopRight1, boolean checkTopRight2) {
-		if (threshold != 0
-				&& (segment.end.getDistance(end)
-						+ segment.end.getDistance(start) > threshold || segment.start
-						.getDistance(end) + segment.start.getDistance(start) > threshold))
+		if (!isInsideOval(segment.start, segment.end))
 			return;
 
 		if (o2.containsProper(segment.start) || o1.containsProper(segment.end))
@@ -243,18 +298,27 @@ public class RPath {
 	 * 
 	 * @param newObs
 	 *            the new obstacle, should not be in the graph already
+	 * @param paths
+	 *            the paths of the group for which the obstacle is added, if
+	 *            this path is the root of a group
 	 */
-	private void addObstacle(RObstacle newObs) {
+	private void addObstacle(RObstacle newObs, long paths) {
 		visibleObstacles.add(newObs);
 		Iterator oItr = new HashSet(visibleObstacles).iterator();
 		while (oItr.hasNext()) {
 			RObstacle currObs = (RObstacle) oItr.next();
-			if (newObs != currObs)
+			if (newObs != currObs
+					&& (group == null || (visibleMasks[currObs.index] & paths) != 0))
 				addSegmentsFor(newObs, currObs);
 		}
 		addPerimiterSegments(newObs);
 		addSegmentsFor(start, newObs);
-		addSegmentsFor(end, newObs);
+		if (group == null)
+			addSegmentsFor(end, newObs);
+		else
+			for (int i = 0; i < group.size(); i++)
+				if ((paths & 1L << i) != 0)
+					addSegmentsFor(((RPath) group.get(i)).end, newObs);
 	}
 
 	/**
@@ -295,36 +359,111 @@ public class RPath {
 	 *            an obstacle to exclude from the search
 	 * @param exclude2
 	 *            another obstacle to exclude from the search
-	 * @param allObstacles
-	 *            the list of all obstacles
+	 * @param ctx
+	 *            the state of the search
 	 */
 	private void addSegment(RSegment segment, RObstacle exclude1,
-			RObstacle exclude2, List allObstacles) {
-		if (threshold != 0
-				&& (segment.end.getDistance(end)
-						+ segment.end.getDistance(start) > threshold || segment.start
-						.getDistance(end) + segment.start.getDistance(start) > threshold))
+			RObstacle exclude2, RSearchContext ctx) {
+		long paths = 0;
+		if (group != null) {
+			paths = getSegmentPaths(segment, ctx);
+			if (paths == 0)
+				return;
+		} else if (!isInsideOval(segment.start, segment.end))
 			return;
 
-		for (int i = 0; i < allObstacles.size(); i++) {
-			RObstacle obs = (RObstacle) allObstacles.get(i);
+		if (ctx.index != null
+				&& excludesCornerObstacles(segment, exclude1, exclude2)) {
+			RObstacle blocker = findCornerBlocker(segment, ctx);
+			if (blocker == null) {
+				linkVertices(segment, ctx);
+				return;
+			}
+			if (!ctx.isExcluded(blocker)) {
+				addVisibleObstacle(blocker, paths);
+				return;
+			}
+			// an obstacle ignored by this search blocks the segment
+		}
+
+		List obstacles = ctx.allObstacles;
+		if (ctx.index != null)
+			obstacles = ctx.index.query(segment, 0, candidates);
 
-			if (obs == exclude1 || obs == exclude2 || obs.exclude)
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
+
+			if (obs == exclude1 || obs == exclude2 || ctx.isExcluded(obs))
 				continue;
 
+			ctx.intersectionTests++;
+
 			if (segment.intersects(obs.x, obs.y, obs.right() - 1,
 					obs.bottom() - 1)
 					|| segment.intersects(obs.x, obs.bottom() - 1,
 							obs.right() - 1, obs.y)
 					|| obs.containsProper(segment.start)
 					|| obs.containsProper(segment.end)) {
-				if (!visibleObstacles.contains(obs))
-					addObstacle(obs);
+				addVisibleObstacle(obs, paths);
 				return;
 			}
 		}
 
-		linkVertices(segment);
+		linkVertices(segment, ctx);
+	}
+
+	/**
+	 * Adds an obstacle blocking a segment to the visibility graph, unless it
+	 * is already there. In a search of a group, the obstacle is added for the
+	 * given paths: it becomes visible to the paths which did not see it yet,
+	 * and its segments are generated for them.
+	 * 
+	 * @param obs
+	 *            the blocking obstacle
+	 * @param paths
+	 *            the paths of the group testing the segment
+	 */
+	private void addVisibleObstacle(RObstacle obs, long paths) {
+		if (group == null) {
+			if (!visibleObstacles.contains(obs))
+				addObstacle(obs, 0);
+			return;
+		}
+		long added = paths & ~visibleMasks[obs.index];
+		if (added != 0) {
+			visibleMasks[obs.index] |= added;
+			addObstacle(obs, added);
+		}
+	}
+
+	/**
+	 * Returns the paths of the group whose own visibility graph would test
+	 * the given segment: the paths whose threshold oval contains both ends of
+	 * the segment, and to which both ends are visible.
+	 * 
+	 * @param segment
+	 *            the segment
+	 * @param ctx
+	 *            the state of the search
+	 * @return a bit mask over the paths of the group
+	 */
+	private long getSegmentPaths(RSegment segment, RSearchContext ctx) {
+		return getOvalMask(segment.start) & getOvalMask(segment.end)
+				& getVisibleMask(segment.start, ctx)
+				& getVisibleMask(segment.end, ctx) & ~COMPUTED;
+	}
+
+	/**
+	 * Returns the paths of the group to which the given vertex is visible. The
+	 * start is visible to all paths, the end of a path only to that path, and
+	 * a corner to the paths its obstacle has been added for.
+	 */
+	private long getVisibleMask(RVertex vertex, RSearchContext ctx) {
+		if (vertex.obs != null)
+			return visibleMasks[vertex.obs.index];
+		if (vertex == start)
+			return -1L;
+		return 1L << (ctx.id(vertex) - ctx.startId - 1);
 	}
 
 	/**
@@ -521,17 +660,30 @@ public class RPath {
 	/**
 	 * Begins the creation of the visibility graph with the first segment
 	 * 
-	 * @param allObstacles
-	 *            list of all obstacles
+	 * @param ctx
+	 *            the state of the search
 	 */
-	private void createVisibilityGraph(List allObstacles) {
-		stack.push(null);
-		stack.push(null);
-		stack.push(new RSegment(start, end));
+	private void createVisibilityGraph(RSearchContext ctx) {
+		if (group != null)
+			for (int i = group.size() - 1; i >= 0; i--) {
+				stack.push(null);
+				stack.push(null);
+				stack.push(new RSegment(start, ((RPath) group.get(i)).end));
+			}
+		else {
+			stack.push(null);
+			stack.push(null);
+			stack.push(new RSegment(start, end));
+		}
 
-		while (!stack.isEmpty())
+		while (!stack.isEmpty()) {
+			if (ctx.isExpired()) {
+				stack.clear();
+				return;
+			}
 			addSegment(stack.pop(), stack.popObstacle(), stack.popObstacle(),
-					allObstacles);
+					ctx);
+		}
 	}
 
 	/**
@@ -539,19 +691,39 @@ public class RPath {
 	 * graph and determine the shortest path. Returns false if no path can be
 	 * found.
 	 * 
+	 * @param ctx
+	 *            the state of the search
 	 * @return true if a path can be found.
 	 */
-	private boolean determineShortestPath() {
-		if (!labelGraph())
+	private boolean determineShortestPath(RSearchContext ctx) {
+		if (!labelGraph(ctx))
+			return false;
+		return readShortestPath(ctx);
+	}
+
+	/**
+	 * Reads the shortest path to the end of this path from the labels of a
+	 * finished search.
+	 * 
+	 * @param ctx
+	 *            the state of the search
+	 * @return false if the search did not reach the end
+	 */
+	private boolean readShortestPath(RSearchContext ctx) {
+		// a search stopped early may have labeled the end with a longer path
+		if (ctx.isExpired() && !ctx.isPermanent(ctx.id(end)))
 			return false;
 		RVertex vertex = end;
-		prevCostRatio = end.cost / start.getDistance(end);
+		cost = ctx.getCost(ctx.id(end));
+		prevCostRatio = cost / start.getDistance(end);
 
 		RVertex nextVertex;
 		while (!vertex.equals(start)) {
-			nextVertex = vertex.label;
-			if (nextVertex == null)
+			int label = ctx.getLabel(ctx.id(vertex));
+			if (label == -1)
 				return false;
+			// the start of a search of several paths is shared by all of them
+			nextVertex = label == ctx.startId ? start : ctx.vertices[label];
 			RSegment s = new RSegment(nextVertex, vertex);
 			segments.add(s);
 			vertex = nextVertex;
@@ -561,6 +733,334 @@ public class RPath {
 		return true;
 	}
 
+	/**
+	 * Returns <code>true</code> if the segment leaving the given obstacle
+	 * corner towards the given vertex runs through the inside of the corner's
+	 * obstacle.
+	 * 
+	 * @param from
+	 *            the vertex the segment starts at
+	 * @param to
+	 *            the vertex the segment ends at
+	 * @return <code>true</code> if the segment enters the obstacle
+	 */
+	private static boolean entersObstacle(RVertex from, RVertex to) {
+		if (from.obs == null)
+			return false;
+		int dx = to.x - from.x;
+		int dy = to.y - from.y;
+		if ((from.positionOnObstacle & RPositionConstants.EAST) > 0)
+			dx = -dx;
+		if ((from.positionOnObstacle & RPositionConstants.NORTH) == 0)
+			dy = -dy;
+		return dx > 0 && dy > 0;
+	}
+
+	/**
+	 * Computes the visible neighbors of the given vertex when the search
+	 * reaches it. The candidates are the end point and the corners of every
+	 * obstacle which is not excluded; the segment to each candidate is tested
+	 * against the obstacles like {@link #addSegment}.
+	 * 
+	 * @param vertex
+	 *            the vertex reached by the search
+	 * @param ctx
+	 *            the state of the search, whose graph row receives the
+	 *            neighbors of the vertex
+	 */
+	private void expandVertex(RVertex vertex, RSearchContext ctx) {
+		ctx.graph.clearRow();
+
+		List obstacles = ctx.allObstacles;
+		if (group != null) {
+			for (int i = 0; i < group.size(); i++)
+				linkVisible(vertex, ((RPath) group.get(i)).end, ctx);
+			// only corners inside the ovals around the vertex can be linked
+			RRectangle bounds = getOvalBounds(vertex);
+			if (ctx.index != null && bounds != null)
+				obstacles = ctx.index.query(bounds.x, bounds.y,
+						bounds.right(), bounds.bottom(), new ArrayList());
+		} else
+			linkVisible(vertex, end, ctx);
+
+		// only corners inside the bounds of the threshold oval can be linked
+		if (ctx.index != null && group == null && threshold != 0) {
+			int radius = (int) Math.ceil(threshold / 2);
+			int cx = (start.x + end.x) / 2;
+			int cy = (start.y + end.y) / 2;
+			obstacles = ctx.index.query(cx - radius - 1, cy - radius - 1, cx
+					+ radius + 1, cy + radius + 1, new ArrayList());
+		}
+
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
+			if (ctx.isExcluded(obs)
+					|| (obs != vertex.obs && obs.containsProper(vertex)))
+				continue;
+			linkVisible(vertex, obs.topLeft, ctx);
+			linkVisible(vertex, obs.topRight, ctx);
+			linkVisible(vertex, obs.bottomLeft, ctx);
+			linkVisible(vertex, obs.bottomRight, ctx);
+		}
+	}
+
+	/**
+	 * Adds the target as a neighbor of the vertex if it lies inside the
+	 * threshold oval and nothing obstructs the segment between them.
+	 * 
+	 * @param vertex
+	 *            the vertex being expanded
+	 * @param target
+	 *            the candidate neighbor
+	 * @param ctx
+	 *            the state of the search
+	 */
+	private void linkVisible(RVertex vertex, RVertex target,
+			RSearchContext ctx) {
+		if (target == vertex || ctx.isPermanent(ctx.id(target)))
+			return;
+		if (!isInsideOval(vertex, target))
+			return;
+		if (entersObstacle(vertex, target) || entersObstacle(target, vertex))
+			return;
+
+		RSegment segment = new RSegment(vertex, target);
+		if (ctx.index != null && vertex.obs != null && target.obs != null) {
+			RObstacle blocker = findCornerBlocker(segment, ctx);
+			if (blocker != null && !ctx.isExcluded(blocker)) {
+				visibleObstacles.add(blocker);
+				return;
+			}
+			if (blocker == null) {
+				linkVisibleSegment(segment, ctx);
+				return;
+			}
+			// an obstacle ignored by this search blocks the segment
+		}
+
+		List obstacles = ctx.allObstacles;
+		if (ctx.index != null)
+			obstacles = ctx.index.query(segment, 0, candidates);
+
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
+
+			if (obs == vertex.obs || obs == target.obs || ctx.isExcluded(obs))
+				continue;
+
+			ctx.intersectionTests++;
+
+			if (segment.intersects(obs.x, obs.y, obs.right() - 1,
+					obs.bottom() - 1)
+					|| segment.intersects(obs.x, obs.bottom() - 1,
+							obs.right() - 1, obs.y)
+					|| obs.containsProper(segment.start)
+					|| obs.containsProper(segment.end)) {
+				visibleObstacles.add(obs);
+				return;
+			}
+		}
+
+		linkVisibleSegment(segment, ctx);
+	}
+
+	/**
+	 * Returns <code>true</code> if two vertices lie inside the threshold oval
+	 * of this path, or both inside the oval of one path of its group, so that
+	 * they may be linked.
+	 * 
+	 * @param a
+	 *            a vertex
+	 * @param b
+	 *            another vertex
+	 * @return <code>true</code> if the vertices may be linked
+	 */
+	private boolean isInsideOval(RVertex a, RVertex b) {
+		if (group == null)
+			return threshold == 0
+					|| (a.getDistance(end) + a.getDistance(start) <= threshold && b
+							.getDistance(end) + b.getDistance(start) <= threshold);
+		return (getOvalMask(a) & getOvalMask(b) & ~COMPUTED) != 0;
+	}
+
+	/**
+	 * Returns the threshold ovals of the paths of the group which contain the
+	 * given vertex.
+	 * 
+	 * @param vertex
+	 *            a vertex
+	 * @return a bit mask over the paths of the group, with the highest bit set
+	 */
+	private long getOvalMask(RVertex vertex) {
+		if (vertex.obs != null && ovalMasks[vertex.id] != 0)
+			return ovalMasks[vertex.id];
+		long mask = COMPUTED;
+		for (int i = 0; i < group.size(); i++) {
+			RPath path = (RPath) group.get(i);
+			if (path.threshold == 0
+					|| vertex.getDistance(path.end) + vertex.getDistance(start) <= path.threshold)
+				mask |= 1L << i;
+		}
+		if (vertex.obs != null)
+			ovalMasks[vertex.id] = mask;
+		return mask;
+	}
+
+	/**
+	 * Returns the bounds of the threshold ovals of the paths of the group
+	 * which contain the given vertex.
+	 * 
+	 * @param vertex
+	 *            a vertex
+	 * @return the bounds, or <code>null</code> if one of the paths has no
+	 *         threshold
+	 */
+	private RRectangle getOvalBounds(RVertex vertex) {
+		RRectangle result = null;
+		long mask = getOvalMask(vertex);
+		for (int i = 0; i < group.size(); i++) {
+			RPath path = (RPath) group.get(i);
+			if ((mask & 1L << i) == 0)
+				continue;
+			if (path.threshold == 0)
+				return null;
+			int radius = (int) Math.ceil(path.threshold / 2);
+			int cx = (start.x + path.end.x) / 2;
+			int cy = (start.y + path.end.y) / 2;
+			RRectangle bounds = new RRectangle(cx - radius - 1,
+					cy - radius - 1, 2 * radius + 2, 2 * radius + 2);
+			if (result == null)
+				result = bounds;
+			else
+				result.union(bounds);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the end of the segment as a neighbor of its start, the vertex being
+	 * expanded.
+	 * 
+	 * @param segment
+	 *            the unobstructed segment
+	 * @param ctx
+	 *            the state of the search
+	 */
+	private void linkVisibleSegment(RSegment segment, RSearchContext ctx) {
+		RVertex vertex = segment.start;
+		RVertex target = segment.end;
+		ctx.graph.addToRow(ctx.id(target), vertex.getDistance(target));
+		ctx.edges++;
+		visibleVertices.add(vertex);
+		visibleVertices.add(target);
+		if (target.obs != null)
+			visibleObstacles.add(target.obs);
+	}
+
+	/**
+	 * Returns <code>true</code> if the obstacles excluded from the test of a
+	 * segment are exactly the obstacles of its two corners, so that the
+	 * visibility shared by all paths applies to it.
+	 */
+	private static boolean excludesCornerObstacles(RSegment segment,
+			RObstacle exclude1, RObstacle exclude2) {
+		RObstacle a = segment.start.obs;
+		RObstacle b = segment.end.obs;
+		if (a == null || b == null)
+			return false;
+		if (exclude2 == null)
+			return a == exclude1 && b == exclude1;
+		return (a == exclude1 && b == exclude2)
+				|| (a == exclude2 && b == exclude1);
+	}
+
+	/**
+	 * Returns the first obstacle blocking a segment between two corners,
+	 * other than the corners' own obstacles and regardless of the obstacles
+	 * excluded from this search. The answer is looked up in the visibility
+	 * shared by all paths, and tested and recorded there on first use.
+	 * 
+	 * @param segment
+	 *            the segment between two obstacle corners
+	 * @param ctx
+	 *            the state of the search
+	 * @return the blocking obstacle, or <code>null</code> if the segment is
+	 *         unobstructed
+	 */
+	private RObstacle findCornerBlocker(RSegment segment, RSearchContext ctx) {
+		Object blocker = segment.start.visibility.get(segment.end);
+		if (blocker == null) {
+			blocker = RCornerVisibility.VISIBLE;
+			List obstacles = ctx.index.query(segment, 0, candidates);
+			for (int i = 0; i < obstacles.size(); i++) {
+				RObstacle obs = (RObstacle) obstacles.get(i);
+
+				if (obs == segment.start.obs || obs == segment.end.obs)
+					continue;
+
+				ctx.intersectionTests++;
+
+				if (segment.intersects(obs.x, obs.y, obs.right() - 1,
+						obs.bottom() - 1)
+						|| segment.intersects(obs.x, obs.bottom() - 1,
+								obs.right() - 1, obs.y)
+						|| obs.containsProper(segment.start)
+						|| obs.containsProper(segment.end)) {
+					blocker = obs;
+					break;
+				}
+			}
+			segment.start.visibility.put(segment.end, blocker);
+			segment.end.visibility.put(segment.start, blocker);
+		}
+		return blocker == RCornerVisibility.VISIBLE ? null : (RObstacle) blocker;
+	}
+
+	/**
+	 * Takes the shortest path found for another path with the same end
+	 * points, or with the same end points in reverse order, instead of
+	 * searching it. The segments are copied, so that this path is spaced from
+	 * the other path like any other path. This path must have been reset with
+	 * {@link #fullReset()}.
+	 * 
+	 * @param source
+	 *            the searched path
+	 */
+	void copyShortestPath(RPath source) {
+		boolean reversed = !source.start.equals(start);
+		for (int i = 0; i < source.segments.size(); i++) {
+			RSegment segment;
+			if (reversed) {
+				segment = (RSegment) source.segments.get(source.segments.size()
+						- 1 - i);
+				segment = new RSegment(copyVertex(segment.end, source),
+						copyVertex(segment.start, source));
+			} else {
+				segment = (RSegment) source.segments.get(i);
+				segment = new RSegment(copyVertex(segment.start, source),
+						copyVertex(segment.end, source));
+			}
+			segments.add(segment);
+		}
+		cost = source.cost;
+		isDegraded = source.isDegraded;
+		prevCostRatio = source.prevCostRatio;
+		threshold = source.threshold;
+		visibleObstacles.addAll(source.visibleObstacles);
+	}
+
+	/**
+	 * Returns the vertex of this path standing for a vertex of a path with the
+	 * same end points: its own end point, or the same obstacle corner.
+	 */
+	private RVertex copyVertex(RVertex vertex, RPath source) {
+		if (vertex == source.start)
+			return start.equals(source.start) ? start : end;
+		if (vertex == source.end)
+			return end.equals(source.end) ? end : start;
+		return vertex;
+	}
+
 	/**
 	 * Resets all necessary fields for a solve.
 	 */
@@ -585,12 +1085,89 @@ public class RPath {
 	 * @return true if a shortest path was found
 	 */
 	boolean generateShortestPath(List allObstacles) {
-		createVisibilityGraph(allObstacles);
+		RSearchContext.number(allObstacles);
+		return generateShortestPath(new RSearchContext(allObstacles, null, this));
+	}
+
+	/**
+	 * Creates the visibility graph and returns whether or not a shortest path
+	 * could be determined. All state of the search is kept in the given
+	 * context, so paths may be searched concurrently.
+	 * 
+	 * @param ctx
+	 *            the state of the search
+	 * @return true if a shortest path was found
+	 */
+	boolean generateShortestPath(RSearchContext ctx) {
+		if (isVisibilityLazy)
+			return determineShortestPath(ctx);
+
+		createVisibilityGraph(ctx);
 
-		if (visibleVertices.size() == 0)
+		if (visibleVertices.size() == 0 || ctx.isExpired())
 			return false;
 
-		return determineShortestPath();
+		ctx.graph.pack(ctx.vertices);
+		return determineShortestPath(ctx);
+	}
+
+	/**
+	 * Searches the shortest paths of the given paths at once, with a single
+	 * shortest path tree rooted at the start of this path. The paths must start
+	 * at the same point as this path, exclude the same obstacles and be no
+	 * more than {@link #MAX_GROUP_SIZE}. This path only serves as the root of
+	 * the tree and has no end of its own.
+	 * <P>
+	 * The visibility graph of the tree is the union of the graphs the paths
+	 * would build alone: a segment is tested once for all the paths whose
+	 * threshold oval contains it and which see both of its ends, and an
+	 * obstacle blocking it becomes visible to those paths only. A lazy graph
+	 * links two vertices if they lie inside the oval of one of the paths. The
+	 * search stops once the ends of all paths are reached.
+	 * <P>
+	 * Each path receives the segments and the cost of its shortest path, and
+	 * the obstacles of the graph it would have built alone, or, when lazy, the
+	 * obstacles seen by the tree until its end was reached. The paths must
+	 * have been reset with {@link #fullReset()}.
+	 * 
+	 * @param paths
+	 *            the paths to search
+	 * @param ctx
+	 *            the state of the search, created for the paths
+	 * @return the paths whose end could not be reached
+	 */
+	List generateShortestPaths(List paths, RSearchContext ctx) {
+		group = paths;
+		ovalMasks = new long[ctx.startId];
+		visibleMasks = new long[ctx.startId / 4];
+		isGoalDirected = false;
+
+		List unreached = new ArrayList();
+		if (!isVisibilityLazy) {
+			createVisibilityGraph(ctx);
+			ctx.graph.pack(ctx.vertices);
+		}
+		if (isVisibilityLazy || visibleVertices.size() > 0)
+			labelGraph(ctx);
+		for (int i = 0; i < paths.size(); i++) {
+			RPath path = (RPath) paths.get(i);
+			if (!path.readShortestPath(ctx))
+				unreached.add(path);
+		}
+		if (!isVisibilityLazy) {
+			// each path sees the obstacles it has been added for
+			Iterator iter = visibleObstacles.iterator();
+			while (iter.hasNext()) {
+				RObstacle obs = (RObstacle) iter.next();
+				for (int i = 0; i < paths.size(); i++)
+					if ((visibleMasks[obs.index] & 1L << i) != 0)
+						((RPath) paths.get(i)).visibleObstacles.add(obs);
+			}
+		}
+		group = null;
+		ovalMasks = null;
+		visibleMasks = null;
+		return unreached;
 	}
 
 	/**
@@ -631,6 +1208,20 @@ public class RPath {
 		return start;
 	}
 
+	/**
+	 * Returns <code>true</code> if the last solve ran out of time or was
+	 * cancelled before this path was fully solved. The points of a degraded
+	 * path are a straight line if it could not be searched, or a path which
+	 * may be longer than the shortest or too close to other paths. The next
+	 * solve solves it again.
+	 * 
+	 * @return <code>true</code> if the points are a best-effort result
+	 * @see RShortestPathRouter#setTimeBudget(long)
+	 */
+	public boolean isDegraded() {
+		return isDegraded;
+	}
+
 	/**
 	 * Returns a subpath for this path at the given segment
 	 * 
@@ -684,50 +1275,73 @@ public class RPath {
 	}
 
 	/**
-	 * Labels the visibility graph to assist in finding the shortest path
+	 * Labels the visibility graph to assist in finding the shortest path. The
+	 * search stops as soon as the end vertex becomes permanent. When goal
+	 * directed, the straight line distance to the end is added to the key of
+	 * each vertex; it never overestimates, so the path found is still optimal.
 	 * 
+	 * @param ctx
+	 *            the state of the search
 	 * @return false if there was a gap in the visibility graph
 	 */
-	private boolean labelGraph() {
-		int numPermanentNodes = 1;
-		RVertex vertex = start;
-		RVertex neighborVertex = null;
-		vertex.isPermanent = true;
+	private boolean labelGraph(RSearchContext ctx) {
+		RVertexHeap queue = new RVertexHeap(ctx.heapIndex,
+				visibleVertices.size());
+		RVisibilityGraph graph = ctx.graph;
+		int endId = group == null ? ctx.id(end) : -1;
+		int vertexId = ctx.id(start);
+		int reached = 0;
+		ctx.setPermanent(vertexId);
 		double newCost;
-		while (numPermanentNodes != visibleVertices.size()) {
-			List neighbors = vertex.neighbors;
-			if (neighbors == null)
+		while (vertexId != endId) {
+			if (ctx.isExpired())
 				return false;
-			// label neighbors if they have a new shortest path
-			for (int i = 0; i < neighbors.size(); i++) {
-				neighborVertex = (RVertex) neighbors.get(i);
-				if (!neighborVertex.isPermanent) {
-					newCost = vertex.cost + vertex.getDistance(neighborVertex);
-					if (neighborVertex.label == null) {
-						neighborVertex.label = vertex;
-						neighborVertex.cost = newCost;
-					} else if (neighborVertex.cost > newCost) {
-						neighborVertex.label = vertex;
-						neighborVertex.cost = newCost;
-					}
+			if (vertexId > ctx.startId) {
+				// the end of a path of the group, which leads nowhere
+				RPath path = (RPath) group.get(vertexId - ctx.startId - 1);
+				if (isVisibilityLazy)
+					path.visibleObstacles.addAll(visibleObstacles);
+				if (++reached == group.size())
+					return true;
+			} else {
+				ctx.expansions++;
+				int first, last;
+				if (isVisibilityLazy) {
+					expandVertex(ctx.vertices[vertexId], ctx);
+					first = 0;
+					last = graph.rowSize;
+				} else {
+					if (!graph.hasNeighbors(vertexId))
+						return false;
+					first = graph.rowStarts[vertexId];
+					last = graph.rowEnds[vertexId];
 				}
-			}
-			// find the next none-permanent, labeled vertex with smallest cost
-			double smallestCost = 0;
-			RVertex tempVertex = null;
-			Iterator v = visibleVertices.iterator();
-			while (v.hasNext()) {
-				tempVertex = (RVertex) v.next();
-				if (!tempVertex.isPermanent
-						&& tempVertex.label != null
-						&& (tempVertex.cost < smallestCost || smallestCost == 0)) {
-					smallestCost = tempVertex.cost;
-					vertex = tempVertex;
+				int[] targets = graph.targets;
+				double[] weights = graph.weights;
+				// label neighbors if they have a new shortest path
+				for (int i = first; i < last; i++) {
+					int neighborId = targets[i];
+					if (!ctx.isPermanent(neighborId)) {
+						newCost = ctx.getCost(vertexId) + weights[i];
+						if (ctx.getLabel(neighborId) == -1
+								|| ctx.getCost(neighborId) > newCost) {
+							ctx.setLabel(neighborId, vertexId, newCost);
+							if (isGoalDirected)
+								queue.update(neighborId, newCost
+										+ ctx.vertices[neighborId]
+												.getDistance(end));
+							else
+								queue.update(neighborId, newCost);
+						}
+					}
 				}
 			}
+			// the next none-permanent, labeled vertex with smallest cost
+			if (queue.isEmpty())
+				return true;
+			vertexId = queue.poll();
 			// set the new vertex to permanent.
-			vertex.isPermanent = true;
-			numPermanentNodes++;
+			ctx.setPermanent(vertexId);
 		}
 		return true;
 	}
@@ -737,17 +1351,14 @@ public class RPath {
 	 * 
 	 * @param segment
 	 *            the segment to add
+	 * @param ctx
+	 *            the state of the search
 	 */
-	private void linkVertices(RSegment segment) {
-		if (segment.start.neighbors == null)
-			segment.start.neighbors = new ArrayList();
-		if (segment.end.neighbors == null)
-			segment.end.neighbors = new ArrayList();
-
-		if (!segment.start.neighbors.contains(segment.end)) {
-			segment.start.neighbors.add(segment.end);
-			segment.end.neighbors.add(segment.start);
-		}
+	private void linkVertices(RSegment segment, RSearchContext ctx) {
+		int startId = ctx.id(segment.start);
+		int endId = ctx.id(segment.end);
+		if (ctx.graph.link(startId, endId))
+			ctx.edges++;
 
 		visibleVertices.add(segment.start);
 		visibleVertices.add(segment.end);
@@ -780,8 +1391,8 @@ public class RPath {
 	}
 
 	/**
-	 * Refreshes the exclude field on the obstacles in the list. Excludes all
-	 * obstacles that contain the start or end point for this path.
+	 * Refreshes the list of excluded obstacles. Excludes all obstacles that
+	 * contain the start or end point for this path.
 	 * 
 	 * @param allObstacles
 	 *            list of all obstacles
@@ -791,11 +1402,11 @@ public class RPath {
 
 		for (int i = 0; i < allObstacles.size(); i++) {
 			RObstacle o = (RObstacle) allObstacles.get(i);
-			o.exclude = false;
+			boolean exclude = false;
 
 			if (o.contains(start)) {
 				if (o.containsProper(start))
-					o.exclude = true;
+					exclude = true;
 				else {
 					/*
 					 * $TODO Check for corners. If the path begins exactly at
@@ -810,17 +1421,49 @@ public class RPath {
 
 			if (o.contains(end)) {
 				if (o.containsProper(end))
-					o.exclude = true;
+					exclude = true;
 				else {
 					// check for corners. See above statement.
 				}
 			}
 
-			if (o.exclude && !excludedObstacles.contains(o))
+			if (exclude && !excludedObstacles.contains(o))
 				excludedObstacles.add(o);
 		}
 	}
 
+	/**
+	 * Records the current points as the solved points, copying them only if
+	 * they have changed. The points are copied from the first that differs into
+	 * the array recorded before, which is replaced only when the number of
+	 * points changes.
+	 * 
+	 * @return <code>true</code> if the points differ from the solved points
+	 *         recorded before
+	 */
+	boolean recordSolvedPoints() {
+		int size = points.size();
+		RPoint p = new RPoint();
+		int i = 0;
+		if (solvedPoints != null && solvedPoints.length == size * 2) {
+			while (i < size) {
+				points.getPoint(p, i);
+				if (p.x != solvedPoints[2 * i] || p.y != solvedPoints[2 * i + 1])
+					break;
+				i++;
+			}
+			if (i == size)
+				return false;
+		} else
+			solvedPoints = new int[size * 2];
+		for (; i < size; i++) {
+			points.getPoint(p, i);
+			solvedPoints[2 * i] = p.x;
+			solvedPoints[2 * i + 1] = p.y;
+		}
+		return true;
+	}
+
 	/**
 	 * Resets the fields for everything in the solve after the visibility graph
 	 * steps.
@@ -891,13 +1534,15 @@ public class RPath {
 		RSegment seg1 = new RSegment(obs.topLeft, obs.bottomRight);
 		RSegment seg2 = new RSegment(obs.topRight, obs.bottomLeft);
 
+		RPoint current = new RPoint();
+		RPoint next = new RPoint();
 		for (int s = 0; s < points.size() - 1; s++) {
-			points.getPoint(CURRENT, s);
-			points.getPoint(NEXT, s + 1);
+			points.getPoint(current, s);
+			points.getPoint(next, s + 1);
 
-			if (seg1.intersects(CURRENT, NEXT)
-					|| seg2.intersects(CURRENT, NEXT) || obs.contains(CURRENT)
-					|| obs.contains(NEXT)) {
+			if (seg1.intersects(current, next)
+					|| seg2.intersects(current, next) || obs.contains(current)
+					|| obs.contains(next)) {
 				isDirty = true;
 				return true;
 			}
@@ -905,4 +1550,37 @@ public class RPath {
 		return false;
 	}
 
+	/**
+	 * Returns <code>true</code> if the points of this path enter the inside
+	 * of the given obstacle. Unlike {@link #testAndSet(RObstacle)}, points
+	 * running along its sides or bending around its corners do not enter it.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 * @return <code>true</code> if a segment of the points enters the
+	 *         obstacle
+	 */
+	boolean entersInside(RObstacle obs) {
+		// the diagonals of the inside, one pixel within the corners
+		int x1 = obs.x + 1, y1 = obs.y + 1;
+		int x2 = obs.x + obs.width - 2, y2 = obs.y + obs.height - 2;
+		if (x1 > x2 || y1 > y2)
+			return false;
+
+		RPoint current = new RPoint();
+		RPoint next = new RPoint();
+		for (int s = 0; s < points.size() - 1; s++) {
+			points.getPoint(current, s);
+			points.getPoint(next, s + 1);
+
+			if (RGeometry.linesIntersect(current.x, current.y, next.x, next.y,
+					x1, y1, x2, y2)
+					|| RGeometry.linesIntersect(current.x, current.y, next.x,
+							next.y, x2, y1, x1, y2)
+					|| obs.containsProper(current) || obs.containsProper(next))
+				return true;
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the solved points of paths. Every cell lists the paths
+ * with a segment crossing it, so that an obstacle only needs to be tested
+ * against the paths which pass near its bounds.
+ *
+ * This class is for internal use only.
+ */
+class RPathIndex {
+
+	/**
+	 * An indexed path, with the keys of the cells it was added to.
+	 */
+	private static class Entry {
+		final RPath path;
+		List keys;
+		int queryMark;
+
+		Entry(RPath path) {
+			this.path = path;
+		}
+	}
+
+	/**
+	 * The base 2 logarithm of the cell size.
+	 */
+	private static final int CELL_SHIFT = 7;
+
+	private final Map cells;
+	private final Map entries;
+	private int mark;
+
+	/**
+	 * Creates an empty index.
+	 */
+	RPathIndex() {
+		cells = new HashMap();
+		entries = new HashMap();
+	}
+
+	/**
+	 * Indexes a path at its solved points, in place of the points it was
+	 * indexed at before.
+	 *
+	 * @param path
+	 *            the path
+	 */
+	void update(RPath path) {
+		Entry entry = (Entry) entries.get(path);
+		if (entry == null) {
+			entry = new Entry(path);
+			entries.put(path, entry);
+		} else
+			removeCells(entry);
+		insert(entry, path.solvedPoints);
+	}
+
+	/**
+	 * Returns whether a path is indexed.
+	 *
+	 * @param path
+	 *            the path
+	 * @return <code>true</code> if the path is indexed
+	 */
+	boolean contains(RPath path) {
+		return entries.containsKey(path);
+	}
+
+	/**
+	 * Removes a path from the index.
+	 *
+	 * @param path
+	 *            the path
+	 */
+	void remove(RPath path) {
+		Entry entry = (Entry) entries.remove(path);
+		if (entry != null)
+			removeCells(entry);
+	}
+
+	/**
+	 * Returns the indexed paths with a segment which may cross the given
+	 * region.
+	 *
+	 * @param x1
+	 *            the smallest x coordinate of the region
+	 * @param y1
+	 *            the smallest y coordinate of the region
+	 * @param x2
+	 *            the largest x coordinate of the region
+	 * @param y2
+	 *            the largest y coordinate of the region
+	 * @param result
+	 *            a list to fill with the candidates, which is cleared first
+	 * @return <code>result</code>
+	 */
+	List query(int x1, int y1, int x2, int y2, List result) {
+		result.clear();
+		int cx1 = x1 >> CELL_SHIFT;
+		int cy1 = y1 >> CELL_SHIFT;
+		int cx2 = x2 >> CELL_SHIFT;
+		int cy2 = y2 >> CELL_SHIFT;
+		if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > entries.size()) {
+			Iterator iter = entries.keySet().iterator();
+			while (iter.hasNext())
+				result.add(iter.next());
+			return result;
+		}
+
+		mark++;
+		for (int cx = cx1; cx <= cx2; cx++)
+			for (int cy = cy1; cy <= cy2; cy++) {
+				List cell = (List) cells.get(RObstacleIndex.key(cx, cy));
+				if (cell == null)
+					continue;
+				for (int i = 0; i < cell.size(); i++) {
+					Entry entry = (Entry) cell.get(i);
+					if (entry.queryMark == mark)
+						continue;
+					entry.queryMark = mark;
+					result.add(entry.path);
+				}
+			}
+		return result;
+	}
+
+	/**
+	 * Adds the entry to the cells crossed by the segments of the given points.
+	 */
+	private void insert(Entry entry, int[] points) {
+		entry.keys = new ArrayList();
+		for (int i = 0; i + 3 < points.length; i += 2)
+			insertSegment(entry, points[i], points[i + 1], points[i + 2],
+					points[i + 3]);
+		if (points.length == 2)
+			insertSegment(entry, points[0], points[1], points[0], points[1]);
+	}
+
+	/**
+	 * Adds the entry to every cell crossed by a segment, one column of cells
+	 * at a time.
+	 */
+	private void insertSegment(Entry entry, int x1, int y1, int x2, int y2) {
+		if (x1 > x2) {
+			int t = x1;
+			x1 = x2;
+			x2 = t;
+			t = y1;
+			y1 = y2;
+			y2 = t;
+		}
+		double slope = x1 == x2 ? 0 : (double) (y2 - y1) / (x2 - x1);
+		int cx2 = x2 >> CELL_SHIFT;
+		for (int cx = x1 >> CELL_SHIFT; cx <= cx2; cx++) {
+			// the part of the segment within the column, bounds included
+			int left = Math.max(x1, cx << CELL_SHIFT);
+			int right = Math.min(x2, (cx + 1) << CELL_SHIFT);
+			int top, bottom;
+			if (x1 == x2) {
+				top = Math.min(y1, y2);
+				bottom = Math.max(y1, y2);
+			} else {
+				double yLeft = y1 + slope * (left - x1);
+				double yRight = y1 + slope * (right - x1);
+				top = Math.max((int) Math.floor(Math.min(yLeft, yRight)) - 1,
+						Math.min(y1, y2));
+				bottom = Math.min((int) Math.ceil(Math.max(yLeft, yRight)) + 1,
+						Math.max(y1, y2));
+			}
+			int cy2 = bottom >> CELL_SHIFT;
+			for (int cy = top >> CELL_SHIFT; cy <= cy2; cy++) {
+				Long key = RObstacleIndex.key(cx, cy);
+				List cell = (List) cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList(4);
+					cells.put(key, cell);
+				} else if (cell.get(cell.size() - 1) == entry)
+					// crossed by a previous segment of the same path
+					continue;
+				cell.add(entry);
+				entry.keys.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry from the cells it was added to.
+	 */
+	private void removeCells(Entry entry) {
+		for (int k = 0; k < entry.keys.size(); k++) {
+			Object key = entry.keys.get(k);
+			List cell = (List) cells.get(key);
+			for (int i = cell.size() - 1; i >= 0; i--)
+				if (cell.get(i) == entry) {
+					cell.remove(i);
+					break;
+				}
+			if (cell.isEmpty())
+				cells.remove(key);
+		}
+		entry.keys = null;
+	}
+
+}
@@ -21,7 +21,8 @@ public class RRectangle implements Cloneable, java.io.Serializable {
 
 	/**
 	 * A singleton for use in short calculations. Use to avoid newing
-	 * unnecessary objects.
+	 * unnecessary objects. It is shared by all threads, so code which may run
+	 * on several threads must not use it.
 	 */
 	public static final RRectangle SINGLETON = new RRectangle();
 
@@ -0,0 +1,24 @@
+import java.util.Map;
+
+/**
+ * Receives the refined points of a provisional solve of a
+ * {@link RRoutingSession}.
+ *
+ * @see RRoutingSession#solveProvisional(RRefinementListener)
+ */
+public interface RRefinementListener {
+
+	/**
+	 * Called once the session has solved at full quality the paths it has
+	 * solved provisionally, on a background thread. Not called if the session
+	 * has been edited or solved again before the refinement started.
+	 *
+	 * @param session
+	 *            the session
+	 * @param points
+	 *            the {@link RPointList points} of the connections whose points
+	 *            have changed, by connection id
+	 */
+	void refined(RRoutingSession session, Map points);
+
+}
@@ -1,42 +1,210 @@
-
+import java.util.ArrayList;
 import java.util.List;
 
 public class RRouter {
 
+	private static final RRoutingSessions SESSIONS = new RRoutingSessions(32,
+			30 * 60 * 1000L);
+	/**
+	 * The cache of routing results, <code>null</code> unless it is turned on
+	 * with {@link #setCache(RRoutingCache)} or the
+	 * <code>edraw2d.cache.entries</code> system property.
+	 */
+	private static volatile RRoutingCache cache = createCache();
+
+	/**
+	 * Creates the cache sized by the <code>edraw2d.cache.entries</code> and
+	 * <code>edraw2d.cache.bytes</code> system properties, which default to no
+	 * entries, meaning no cache, and 32 MB.
+	 */
+	private static RRoutingCache createCache() {
+		int maxEntries = Integer.getInteger("edraw2d.cache.entries", 0).intValue(); //$NON-NLS-1$
+		long maxBytes = Long.getLong("edraw2d.cache.bytes", 32 * 1024 * 1024L).longValue(); //$NON-NLS-1$
+		return maxEntries > 0 ? new RRoutingCache(maxEntries, maxBytes) : null;
+	}
+
+	/**
+	 * Returns the long-lived routing session of a diagram, creating it on
+	 * first use. Sessions survive between calls and are evicted when they are
+	 * the least recently used beyond 32 live sessions, or after 30 minutes
+	 * without use.
+	 *
+	 * @param diagramId
+	 *            the caller-chosen diagram id
+	 * @return the session
+	 */
+	public static RRoutingSession getSession(String diagramId) {
+		return SESSIONS.get(diagramId);
+	}
+
+	/**
+	 * Discards the routing session of a diagram.
+	 *
+	 * @param diagramId
+	 *            the diagram id
+	 * @return <code>true</code> if a session existed
+	 */
+	public static boolean closeSession(String diagramId) {
+		return SESSIONS.remove(diagramId);
+	}
+
+	/**
+	 * Returns the cache of routing results shared by all routers. While a
+	 * cache is set, every solve of this class is answered from it when the
+	 * same obstacles, in the same order, spacing and connections have been
+	 * routed before.
+	 *
+	 * @return the cache, or <code>null</code> if results are not cached
+	 */
+	public static RRoutingCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the cache of routing results shared by all routers. There is no
+	 * cache unless one is set here or sized by the
+	 * <code>edraw2d.cache.entries</code> system property.
+	 *
+	 * @param cache
+	 *            the cache, or <code>null</code> to stop caching results
+	 */
+	public static void setCache(RRoutingCache cache) {
+		RRouter.cache = cache;
+	}
+
 	@SuppressWarnings("rawtypes")
 	public RPointList solveFor(List obstacles, List bendpoints, int x1, int y1, int x2, int y2) {
-		RPoint start = new RPoint(x1, y1);
-		RPoint end = new RPoint(x2, y2);
+		return new RPointList(solveFor(toIntArray(obstacles, 4), toIntArray(bendpoints, 2), x1, y1, x2, y2));
+	}
 
-		RShortestPathRouter router = new RShortestPathRouter();
+	/**
+	 * Solves many connections against one shared obstacle set. The obstacles
+	 * are added once to a single router, every connection becomes one of its
+	 * paths and all of them are routed by the same solve, so that paths which
+	 * bend around the same corners are spaced apart from each other.
+	 *
+	 * @param obstacles
+	 *            the obstacles, each one a list of x, y, width and height
+	 * @param connections
+	 *            the connections, each one a list of x1, y1, x2, y2 and an
+	 *            optional fifth element holding the list of bendpoints
+	 * @return the list of solved point lists, in the order of the connections
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public List solveForAll(List obstacles, List connections) {
+		int[][] rows = new int[connections.size()][];
+		for (int i = 0; i < connections.size(); i++) {
+			List l = (List) connections.get(i);
+			int[] bendpoints = l.size() > 4 && l.get(4) != null ? toIntArray((List) l.get(4), 2) : new int[0];
 
-		for (int i = 0; i < obstacles.size(); i++) {
-			List l = (List) obstacles.get(i);
+			int[] row = new int[4 + bendpoints.length];
+			for (int c = 0; c < 4; c++)
+				row[c] = Integer.parseInt(l.get(c).toString());
+			System.arraycopy(bendpoints, 0, row, 4, bendpoints.length);
+			rows[i] = row;
+		}
+
+		int[][] points = solveForAll(toIntArray(obstacles, 4), rows);
 
-			int x = Integer.parseInt(l.get(0).toString());
-			int y = Integer.parseInt(l.get(1).toString());
-			int w = Integer.parseInt(l.get(2).toString());
-			int h = Integer.parseInt(l.get(3).toString());
+		List result = new ArrayList(points.length);
+		for (int i = 0; i < points.length; i++)
+			result.add(new RPointList(points[i]));
+		return result;
+	}
 
-			router.addObstacle(new RRectangle(x, y, w, h));
+	/**
+	 * Solves one connection like {@link #solveFor(List, List, int, int, int, int)}
+	 * but reads its input from flat int arrays, which script engines can hand
+	 * over without any conversion.
+	 *
+	 * @param obstacles
+	 *            the obstacles as consecutive x, y, width, height quads
+	 * @param bendpoints
+	 *            the bendpoints as consecutive x, y pairs, may be
+	 *            <code>null</code>
+	 * @return the solved points as consecutive x, y pairs
+	 */
+	public int[] solveFor(int[] obstacles, int[] bendpoints, int x1, int y1, int x2, int y2) {
+		int[] row = new int[4 + (bendpoints == null ? 0 : bendpoints.length)];
+		row[0] = x1;
+		row[1] = y1;
+		row[2] = x2;
+		row[3] = y2;
+		if (bendpoints != null)
+			System.arraycopy(bendpoints, 0, row, 4, bendpoints.length);
+		return solveForAll(obstacles, new int[][] { row })[0];
+	}
+
+	/**
+	 * Solves many connections like {@link #solveForAll(List, List)} but reads
+	 * its input from flat int arrays.
+	 *
+	 * @param obstacles
+	 *            the obstacles as consecutive x, y, width, height quads
+	 * @param connections
+	 *            one row per connection holding x1, y1, x2, y2 followed by the
+	 *            bendpoints as x, y pairs
+	 * @return one row of solved x, y pairs per connection
+	 */
+	public int[][] solveForAll(int[] obstacles, int[][] connections) {
+		RShortestPathRouter router = new RShortestPathRouter();
+		RRoutingCache cache = RRouter.cache;
+		RRoutingCache.Key key = null;
+		if (cache != null) {
+			key = new RRoutingCache.Key(obstacles, router.getSpacing(), connections);
+			int[][] cached = cache.get(key);
+			if (cached != null)
+				return cached;
 		}
 
-		RPath path = new RPath(start, end);
-		RPointList bendPointList = new RPointList(bendpoints.size());
-		for (int i = 0; i < bendpoints.size(); i++) {
-			List l = (List) bendpoints.get(i);
-			int x = Integer.parseInt(l.get(0).toString());
-			int y = Integer.parseInt(l.get(1).toString());
-			bendPointList.addPoint(x, y);
+		addObstacles(router, obstacles);
 
+		RPath[] paths = new RPath[connections.length];
+		for (int i = 0; i < connections.length; i++) {
+			int[] c = connections[i];
+			RPath path = new RPath(new RPoint(c[0], c[1]), new RPoint(c[2], c[3]));
+			if (c.length > 4)
+				path.setBendPoints(toPointList(c, 4));
+			router.addPath(path);
+			paths[i] = path;
 		}
-		
-		path.setBendPoints(bendPointList);
-		router.addPath(path);
 
 		router.solve();
 
-		return path.getPoints();
+		int[][] result = new int[paths.length][];
+		for (int i = 0; i < paths.length; i++)
+			result[i] = paths[i].getPoints().toIntArray();
+		if (cache != null)
+			cache.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Flattens a list of rectangles or points, each one a list starting with
+	 * <code>width</code> numbers, into consecutive numbers.
+	 */
+	@SuppressWarnings("rawtypes")
+	private int[] toIntArray(List tuples, int width) {
+		int[] result = new int[tuples.size() * width];
+		for (int i = 0; i < tuples.size(); i++) {
+			List l = (List) tuples.get(i);
+			for (int c = 0; c < width; c++)
+				result[i * width + c] = Integer.parseInt(l.get(c).toString());
+		}
+		return result;
+	}
+
+	private void addObstacles(RShortestPathRouter router, int[] obstacles) {
+		for (int i = 0; i + 3 < obstacles.length; i += 4)
+			router.addObstacle(new RRectangle(obstacles[i], obstacles[i + 1],
+					obstacles[i + 2], obstacles[i + 3]));
+	}
+
+	private RPointList toPointList(int[] coordinates, int offset) {
+		RPointList bendPointList = new RPointList((coordinates.length - offset) / 2);
+		for (int i = offset; i + 1 < coordinates.length; i += 2)
+			bendPointList.addPoint(coordinates[i], coordinates[i + 1]);
+		return bendPointList;
 	}
 
 }
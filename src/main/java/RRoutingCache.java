@@ -0,0 +1,215 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of routing results, so that routing the same view again
+ * with unchanged geometry returns the previous points without building any
+ * visibility graph. Results are keyed by the obstacle rectangles, the path
+ * spacing and the start, end and bendpoints of each connection, all in
+ * order: the router bends paths around obstacles in the order they were
+ * added, so the same obstacles given in another order may route
+ * differently.
+ * <P>
+ * Entries are evicted in least recently used order once the cache holds
+ * more than its maximum number of entries or its approximate maximum number
+ * of bytes.
+ */
+public class RRoutingCache {
+
+	/**
+	 * A routing request. The hash code of the obstacles does not depend on
+	 * their order, but keys are equal only if their obstacles come in the
+	 * same order.
+	 */
+	static final class Key {
+		private final int[] obstacles;
+		private final int spacing;
+		private final int[][] connections;
+		private final int hash;
+
+		Key(int[] obstacles, int spacing, int[][] connections) {
+			this.obstacles = obstacles.clone();
+			this.spacing = spacing;
+			this.connections = copy(connections);
+
+			// obstacles are summed, so the hash does not depend on their order
+			long h = 0;
+			for (int i = 0; i + 3 < obstacles.length; i += 4)
+				h += mix(mix(mix(mix(17, obstacles[i]), obstacles[i + 1]),
+						obstacles[i + 2]), obstacles[i + 3]);
+			h = mix(h, spacing);
+			for (int c = 0; c < connections.length; c++) {
+				int[] connection = connections[c];
+				h = mix(h, connection.length);
+				for (int i = 0; i < connection.length; i++)
+					h = mix(h, connection[i]);
+			}
+			hash = (int) (h ^ (h >>> 32));
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return hash == other.hash && spacing == other.spacing
+					&& Arrays.equals(obstacles, other.obstacles)
+					&& Arrays.deepEquals(connections, other.connections);
+		}
+
+		long getBytes() {
+			return 48 + arrayBytes(obstacles) + arrayBytes(connections);
+		}
+	}
+
+	private static final class Entry {
+		final int[][] points;
+		final long bytes;
+
+		Entry(Key key, int[][] points) {
+			this.points = points;
+			bytes = key.getBytes() + arrayBytes(points) + 32;
+		}
+	}
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap entries;
+	private long bytes;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Creates a new empty cache.
+	 *
+	 * @param maxEntries
+	 *            the maximum number of cached results
+	 * @param maxBytes
+	 *            the approximate maximum number of bytes used by the cached
+	 *            requests and results
+	 */
+	public RRoutingCache(int maxEntries, long maxBytes) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be positive"); //$NON-NLS-1$
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		entries = new LinkedHashMap(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the cached points of a request.
+	 *
+	 * @param key
+	 *            the request
+	 * @return a copy of the points of each connection, or <code>null</code>
+	 *         if the request is not cached
+	 */
+	synchronized int[][] get(Key key) {
+		Entry entry = (Entry) entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return copy(entry.points);
+	}
+
+	/**
+	 * Caches the points of a request, then evicts the least recently used
+	 * entries until the cache is within its limits again. A result larger
+	 * than the maximum number of bytes is not cached.
+	 *
+	 * @param key
+	 *            the request
+	 * @param points
+	 *            the points of each connection, which are copied
+	 */
+	synchronized void put(Key key, int[][] points) {
+		Entry entry = new Entry(key, copy(points));
+		if (entry.bytes > maxBytes)
+			return;
+		Entry old = (Entry) entries.put(key, entry);
+		if (old != null)
+			bytes -= old.bytes;
+		bytes += entry.bytes;
+
+		Iterator itr = entries.values().iterator();
+		while (entries.size() > maxEntries || bytes > maxBytes) {
+			bytes -= ((Entry) itr.next()).bytes;
+			itr.remove();
+		}
+	}
+
+	/**
+	 * Discards all cached results. The hit and miss counters are kept.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests which had to be routed.
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the approximate number of bytes used by the cached requests
+	 * and results.
+	 *
+	 * @return the number of bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	private static long mix(long h, int value) {
+		h = (h ^ value) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	private static long arrayBytes(int[] array) {
+		return 16 + 4L * array.length;
+	}
+
+	private static long arrayBytes(int[][] arrays) {
+		long result = 16 + 4L * arrays.length;
+		for (int i = 0; i < arrays.length; i++)
+			result += arrayBytes(arrays[i]);
+		return result;
+	}
+
+	private static int[][] copy(int[][] arrays) {
+		int[][] result = new int[arrays.length][];
+		for (int i = 0; i < arrays.length; i++)
+			result[i] = arrays[i].clone();
+		return result;
+	}
+
+}
@@ -0,0 +1,333 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a {@link RShortestPathRouter} together with its obstacles and paths
+ * alive between calls, so that re-routing after a small edit only re-solves
+ * the paths which the edit has dirtied.
+ * <P>
+ * Obstacles and connections are identified by arbitrary caller-chosen ids.
+ * The id of a connection is stored as the {@link RPath#data data} of its
+ * path.
+ * <P>
+ * For interactive editing, {@link #solveProvisional(RRefinementListener)}
+ * returns a provisional route at once and refines it in the background. Any
+ * edit or solve stops a refinement in progress.
+ */
+public class RRoutingSession {
+
+	/**
+	 * Holds the daemon threads refining provisional solves, created on first
+	 * use.
+	 */
+	private static class Refiners {
+		static final Executor EXECUTOR = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"RRoutingSession-" + count.incrementAndGet()); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	private final Object id;
+	private final RShortestPathRouter router;
+	private final Map obstacles;
+	private final Map connections;
+	/**
+	 * The number of edits and solves so far. A refinement scheduled before the
+	 * last one is outdated.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	/** The deadline of the refinement in progress, if any */
+	private volatile RDeadline refinement;
+
+	volatile long lastAccess;
+
+	/**
+	 * Creates a new empty session.
+	 *
+	 * @param id
+	 *            the id of the diagram routed by this session
+	 */
+	public RRoutingSession(Object id) {
+		this.id = id;
+		router = new RShortestPathRouter();
+		obstacles = new HashMap();
+		connections = new HashMap();
+		touch();
+	}
+
+	/**
+	 * Adds an obstacle, or moves it if an obstacle with the same id exists.
+	 *
+	 * @return <code>true</code> if one or more paths have been dirtied
+	 */
+	public boolean addObstacle(Object obstacleId, int x, int y, int w,
+			int h) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			RRectangle bounds = new RRectangle(x, y, w, h);
+			RRectangle old = (RRectangle) obstacles.put(obstacleId, bounds);
+			if (old == null)
+				return router.addObstacle(obstacleId, bounds);
+			if (old.equals(bounds))
+				return false;
+			return router.updateObstacle(obstacleId, bounds);
+		}
+	}
+
+	/**
+	 * Moves or resizes an existing obstacle.
+	 *
+	 * @return <code>true</code> if one or more paths have been dirtied
+	 */
+	public boolean moveObstacle(Object obstacleId, int x, int y, int w,
+			int h) {
+		outdateRefinement();
+		synchronized (this) {
+			if (!obstacles.containsKey(obstacleId))
+				throw new IllegalArgumentException("Unknown obstacle: " + obstacleId); //$NON-NLS-1$
+			return addObstacle(obstacleId, x, y, w, h);
+		}
+	}
+
+	/**
+	 * Removes an obstacle.
+	 *
+	 * @return <code>true</code> if one or more paths have been dirtied
+	 */
+	public boolean removeObstacle(Object obstacleId) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			RRectangle old = (RRectangle) obstacles.remove(obstacleId);
+			if (old == null)
+				return false;
+			return router.removeObstacle(obstacleId);
+		}
+	}
+
+	/**
+	 * Adds a connection, or moves it if a connection with the same id exists.
+	 *
+	 * @param bendpoints
+	 *            the bendpoints as consecutive x, y pairs, may be
+	 *            <code>null</code>
+	 */
+	public void addConnection(Object connectionId, int x1, int y1, int x2,
+			int y2, int[] bendpoints) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			RPath path = (RPath) connections.get(connectionId);
+			if (path == null) {
+				path = new RPath(new RPoint(x1, y1), new RPoint(x2, y2));
+				path.data = connectionId;
+				connections.put(connectionId, path);
+				router.addPath(path);
+			} else {
+				path.setStartPoint(new RPoint(x1, y1));
+				path.setEndPoint(new RPoint(x2, y2));
+			}
+
+			RPointList old = path.getBendPoints();
+			if (bendpoints != null && bendpoints.length > 0) {
+				if (old == null || !Arrays.equals(old.toIntArray(), bendpoints))
+					path.setBendPoints(new RPointList(bendpoints.clone()));
+			} else if (old != null && old.size() > 0)
+				path.setBendPoints(null);
+		}
+	}
+
+	/**
+	 * Moves the end points and bendpoints of an existing connection.
+	 */
+	public void moveConnection(Object connectionId, int x1, int y1, int x2,
+			int y2, int[] bendpoints) {
+		outdateRefinement();
+		synchronized (this) {
+			if (!connections.containsKey(connectionId))
+				throw new IllegalArgumentException("Unknown connection: " + connectionId); //$NON-NLS-1$
+			addConnection(connectionId, x1, y1, x2, y2, bendpoints);
+		}
+	}
+
+	/**
+	 * Removes a connection.
+	 *
+	 * @return <code>true</code> if the connection existed
+	 */
+	public boolean removeConnection(Object connectionId) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			RPath path = (RPath) connections.remove(connectionId);
+			if (path == null)
+				return false;
+			router.removePath(path);
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the id of the diagram routed by this session.
+	 *
+	 * @return the diagram id
+	 */
+	public Object getId() {
+		return id;
+	}
+
+	/**
+	 * Returns a copy of the solved points of a connection, which a
+	 * refinement in the background does not change.
+	 *
+	 * @return the points, or <code>null</code> for an unknown connection
+	 */
+	public synchronized RPointList getPoints(Object connectionId) {
+		touch();
+		RPath path = (RPath) connections.get(connectionId);
+		return path == null ? null : path.getPoints().getCopy();
+	}
+
+	/**
+	 * Sets the spacing maintained between paths.
+	 *
+	 * @see RShortestPathRouter#setSpacing(int)
+	 */
+	public void setSpacing(int spacing) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			router.setSpacing(spacing);
+		}
+	}
+
+	/**
+	 * Sets whether obstacle moves are batched until the next solve, for
+	 * example while obstacles are dragged.
+	 *
+	 * @see RShortestPathRouter#setUpdateBatching(boolean)
+	 */
+	public void setUpdateBatching(boolean updateBatching) {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			router.setUpdateBatching(updateBatching);
+		}
+	}
+
+	/**
+	 * Solves the dirty paths of this session.
+	 *
+	 * @return the ids of the connections whose points have changed since
+	 *         they were last returned
+	 */
+	public List solve() {
+		outdateRefinement();
+		synchronized (this) {
+			touch();
+			List paths = router.solve();
+			List ids = new ArrayList(paths.size());
+			for (int i = 0; i < paths.size(); i++)
+				ids.add(((RPath) paths.get(i)).data);
+			return ids;
+		}
+	}
+
+	/**
+	 * Solves the dirty paths of this session provisionally, then refines them
+	 * in the background. The provisional points are returned at once; the
+	 * listener is called with the refined points once the full solve is done.
+	 * A refinement not started yet is dropped by the next edit or solve, and
+	 * a refinement in progress is stopped, leaving its paths
+	 * {@link RPath#isDegraded() degraded} until the next solve.
+	 *
+	 * @param listener
+	 *            the listener receiving the refined points
+	 * @return the points of the connections whose points have changed since
+	 *         they were last returned, by connection id
+	 * @see RShortestPathRouter#solveProvisional()
+	 */
+	public Map solveProvisional(final RRefinementListener listener) {
+		outdateRefinement();
+		final long scheduled;
+		Map points;
+		synchronized (this) {
+			touch();
+			points = toPoints(router.solveProvisional());
+			scheduled = generation.get();
+		}
+		Refiners.EXECUTOR.execute(new Runnable() {
+			public void run() {
+				refine(scheduled, listener);
+			}
+		});
+		return points;
+	}
+
+	/**
+	 * Solves the paths of a provisional solve at full quality, unless the
+	 * session has been edited or solved since. The listener is not called if
+	 * an edit or solve has stopped the refinement, whose points are then
+	 * partly degraded.
+	 */
+	private void refine(long scheduled, RRefinementListener listener) {
+		RDeadline deadline = new RDeadline(router.getTimeBudget());
+		Map points;
+		synchronized (this) {
+			// an edit either sees the deadline or outdates the refinement
+			refinement = deadline;
+			try {
+				if (generation.get() != scheduled)
+					return;
+				points = toPoints(router.solve(deadline));
+			} finally {
+				refinement = null;
+			}
+			if (deadline.isCancelled() || generation.get() != scheduled)
+				return;
+		}
+		if (!points.isEmpty())
+			listener.refined(this, points);
+	}
+
+	/**
+	 * Outdates the refinement scheduled, and stops the one in progress.
+	 */
+	private void outdateRefinement() {
+		generation.incrementAndGet();
+		RDeadline deadline = refinement;
+		if (deadline != null)
+			deadline.cancel();
+	}
+
+	private static Map toPoints(List paths) {
+		Map points = new LinkedHashMap();
+		for (int i = 0; i < paths.size(); i++) {
+			RPath path = (RPath) paths.get(i);
+			points.put(path.data, path.getPoints().getCopy());
+		}
+		return points;
+	}
+
+	private void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+}
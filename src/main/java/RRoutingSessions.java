@@ -0,0 +1,98 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A registry of {@link RRoutingSession routing sessions} keyed by diagram id.
+ * Sessions are evicted in least recently used order once the registry is
+ * full, and whenever they have not been used for longer than the idle
+ * timeout.
+ */
+public class RRoutingSessions {
+
+	private final int maxSessions;
+	private final long idleTimeout;
+	private final LinkedHashMap sessions;
+
+	/**
+	 * Creates a new registry.
+	 *
+	 * @param maxSessions
+	 *            the maximum number of sessions kept alive
+	 * @param idleTimeout
+	 *            the time in milliseconds after which an unused session is
+	 *            evicted, or 0 for no timeout
+	 */
+	public RRoutingSessions(int maxSessions, long idleTimeout) {
+		if (maxSessions < 1)
+			throw new IllegalArgumentException("maxSessions must be positive"); //$NON-NLS-1$
+		this.maxSessions = maxSessions;
+		this.idleTimeout = idleTimeout;
+		sessions = new LinkedHashMap(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > RRoutingSessions.this.maxSessions;
+			}
+		};
+	}
+
+	/**
+	 * Evicts all sessions which have been idle for longer than the timeout.
+	 *
+	 * @return the number of evicted sessions
+	 */
+	public synchronized int evictIdle() {
+		if (idleTimeout <= 0)
+			return 0;
+		long limit = System.currentTimeMillis() - idleTimeout;
+		int count = 0;
+		Iterator itr = sessions.values().iterator();
+		while (itr.hasNext()) {
+			RRoutingSession session = (RRoutingSession) itr.next();
+			if (session.lastAccess < limit) {
+				itr.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the session for the given diagram, creating it if necessary.
+	 *
+	 * @param diagramId
+	 *            the caller-chosen diagram id
+	 * @return the session
+	 */
+	public synchronized RRoutingSession get(Object diagramId) {
+		evictIdle();
+		RRoutingSession session = (RRoutingSession) sessions.get(diagramId);
+		if (session == null) {
+			session = new RRoutingSession(diagramId);
+			sessions.put(diagramId, session);
+		}
+		return session;
+	}
+
+	/**
+	 * Discards the session of the given diagram.
+	 *
+	 * @param diagramId
+	 *            the diagram id
+	 * @return <code>true</code> if a session existed
+	 */
+	public synchronized boolean remove(Object diagramId) {
+		return sessions.remove(diagramId) != null;
+	}
+
+	/**
+	 * Returns the number of live sessions.
+	 *
+	 * @return the number of sessions
+	 */
+	public synchronized int size() {
+		return sessions.size();
+	}
+
+}
@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of a shortest path search. The labels, costs and visibility graph
+ * of a search are kept here rather than on the vertices and obstacles, which
+ * are shared by all paths, so that searches for different paths can run at
+ * the same time.
+ * <P>
+ * Vertices are identified by dense ids. The four corners of the obstacle at
+ * position <i>i</i> of the obstacle list have the ids 4<i>i</i> to
+ * 4<i>i</i>&nbsp;+&nbsp;3, and the start and end of the searched path follow
+ * the corners of the last obstacle. A search of several paths from the same
+ * start point gives the end of each path its own id after the start.
+ * <P>
+ * A context is reused by the searches which run one after the other, for as
+ * long as the obstacles are not added or removed. The labels and costs are
+ * stamped with the number of the search which set them, and so are the rows
+ * of the visibility graph, so that starting a new search only forgets the
+ * state it touched rather than every vertex.
+ * 
+ * This class is for internal use only.
+ */
+class RSearchContext {
+
+	final List allObstacles;
+	final RObstacleIndex index;
+
+	final RVertex[] vertices;
+	final int[] heapIndex;
+	final RVisibilityGraph graph;
+
+	/** Counters of the work done by the current search */
+	int edges, intersectionTests, expansions;
+
+	/** The deadline of the solve running the search, may be <code>null</code> */
+	RDeadline deadline;
+
+	/** The id of the start vertex; the ends follow it */
+	final int startId;
+
+	private final double[] cost;
+	private final int[] label;
+	/** The search which labeled each vertex */
+	private final int[] labeled;
+	/** The search which made each vertex permanent */
+	private final int[] settled;
+	private int search;
+
+	/** The obstacles ignored by the current search, as a bit set by index */
+	private final long[] excluded;
+	private final List excludedObstacles;
+	private final List candidates;
+
+	private RVertex start;
+	private RVertex[] ends;
+
+	/**
+	 * Creates the state for a search of the given path. The obstacles must
+	 * have been numbered with {@link #number(List)}.
+	 * 
+	 * @param allObstacles
+	 *            the list of all obstacles
+	 * @param index
+	 *            the spatial index of the obstacles, may be <code>null</code>
+	 * @param path
+	 *            the path to search
+	 */
+	RSearchContext(List allObstacles, RObstacleIndex index, RPath path) {
+		this(allObstacles, index);
+		begin(path);
+	}
+
+	/**
+	 * Creates the state for the searches of paths among the given obstacles,
+	 * which must have been numbered with {@link #number(List)}. A search is
+	 * started with {@link #begin(RPath)} or {@link #begin(RVertex, List)}.
+	 * 
+	 * @param allObstacles
+	 *            the list of all obstacles
+	 * @param index
+	 *            the spatial index of the obstacles, may be <code>null</code>
+	 */
+	RSearchContext(List allObstacles, RObstacleIndex index) {
+		this.allObstacles = allObstacles;
+		this.index = index;
+
+		int n = allObstacles.size();
+		startId = 4 * n;
+		vertices = new RVertex[startId + 1 + RPath.MAX_GROUP_SIZE];
+		for (int i = 0; i < n; i++) {
+			RObstacle obs = (RObstacle) allObstacles.get(i);
+			vertices[4 * i] = obs.topLeft;
+			vertices[4 * i + 1] = obs.topRight;
+			vertices[4 * i + 2] = obs.bottomLeft;
+			vertices[4 * i + 3] = obs.bottomRight;
+		}
+
+		cost = new double[vertices.length];
+		label = new int[vertices.length];
+		labeled = new int[vertices.length];
+		settled = new int[vertices.length];
+		heapIndex = new int[vertices.length];
+		graph = new RVisibilityGraph(vertices.length);
+		excluded = new long[(n + 63) >>> 6];
+		excludedObstacles = new ArrayList();
+		candidates = new ArrayList();
+	}
+
+	/**
+	 * Starts the search of the given path, forgetting the previous search.
+	 * 
+	 * @param path
+	 *            the path to search
+	 */
+	void begin(RPath path) {
+		begin(path.start, new RVertex[] { path.end });
+	}
+
+	/**
+	 * Starts the search of the given paths at once, from the start point they
+	 * share, forgetting the previous search.
+	 * 
+	 * @param start
+	 *            the start vertex of the search
+	 * @param paths
+	 *            the paths to search, starting at the start point
+	 */
+	void begin(RVertex start, List paths) {
+		RVertex[] ends = new RVertex[paths.size()];
+		for (int j = 0; j < ends.length; j++)
+			ends[j] = ((RPath) paths.get(j)).end;
+		begin(start, ends);
+	}
+
+	private void begin(RVertex start, RVertex[] ends) {
+		this.start = start;
+		this.ends = ends;
+		vertices[startId] = start;
+		System.arraycopy(ends, 0, vertices, startId + 1, ends.length);
+
+		if (++search == Integer.MAX_VALUE) {
+			// every stamp could match a future search
+			search = 1;
+			for (int i = 0; i < vertices.length; i++)
+				labeled[i] = settled[i] = 0;
+		}
+		graph.reset();
+		edges = intersectionTests = expansions = 0;
+
+		// obstacles containing the start or end point are not searched
+		for (int i = 0; i < excludedObstacles.size(); i++) {
+			int index = ((RObstacle) excludedObstacles.get(i)).index;
+			excluded[index >>> 6] &= ~(1L << index);
+		}
+		excludedObstacles.clear();
+		excludeObstaclesContaining(start);
+		for (int j = 0; j < ends.length; j++)
+			excludeObstaclesContaining(ends[j]);
+	}
+
+	private void excludeObstaclesContaining(RVertex vertex) {
+		List obstacles = allObstacles;
+		if (index != null)
+			obstacles = index.query(vertex.x, vertex.y, vertex.x, vertex.y,
+					candidates);
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
+			if (obs.containsProper(vertex) && !isExcluded(obs)) {
+				excluded[obs.index >>> 6] |= 1L << obs.index;
+				excludedObstacles.add(obs);
+			}
+		}
+	}
+
+	/**
+	 * Numbers the given obstacles and their corners by their position in the
+	 * list.
+	 * 
+	 * @param allObstacles
+	 *            the list of all obstacles
+	 */
+	static void number(List allObstacles) {
+		for (int i = 0; i < allObstacles.size(); i++)
+			((RObstacle) allObstacles.get(i)).setIndex(i);
+	}
+
+	/**
+	 * Returns the id of the given vertex in this search.
+	 * 
+	 * @param vertex
+	 *            a corner of an obstacle, or the start or an end of the search
+	 * @return the id
+	 */
+	int id(RVertex vertex) {
+		if (vertex.obs != null)
+			return vertex.id;
+		if (vertex == start)
+			return startId;
+		for (int j = 0; j < ends.length; j++)
+			if (vertex == ends[j])
+				return startId + 1 + j;
+		return vertex.id;
+	}
+
+	/**
+	 * Returns the vertex the shortest path found so far to the given vertex
+	 * comes from.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @return the id of the previous vertex, or -1 if the vertex has not been
+	 *         labeled by this search
+	 */
+	int getLabel(int id) {
+		return labeled[id] == search ? label[id] : -1;
+	}
+
+	/**
+	 * Returns the length of the shortest path found so far to the given
+	 * vertex.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @return the cost, or 0 if the vertex has not been labeled by this search
+	 */
+	double getCost(int id) {
+		return labeled[id] == search ? cost[id] : 0;
+	}
+
+	/**
+	 * Labels a vertex with a shorter path.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @param previous
+	 *            the id of the vertex the path comes from
+	 * @param newCost
+	 *            the length of the path
+	 */
+	void setLabel(int id, int previous, double newCost) {
+		labeled[id] = search;
+		label[id] = previous;
+		cost[id] = newCost;
+	}
+
+	/**
+	 * Returns <code>true</code> if the shortest path to the given vertex is
+	 * known.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @return <code>true</code> if the vertex is permanent
+	 */
+	boolean isPermanent(int id) {
+		return settled[id] == search;
+	}
+
+	/**
+	 * Marks the shortest path to the given vertex as known.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 */
+	void setPermanent(int id) {
+		settled[id] = search;
+	}
+
+	/**
+	 * Returns <code>true</code> if the search must stop because the deadline
+	 * of its solve has expired.
+	 * 
+	 * @return <code>true</code> if expired
+	 */
+	boolean isExpired() {
+		return deadline != null && deadline.isExpired();
+	}
+
+	/**
+	 * Returns <code>true</code> if the given obstacle is ignored by this
+	 * search because it contains the start or end point.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 * @return <code>true</code> if excluded
+	 */
+	boolean isExcluded(RObstacle obs) {
+		return (excluded[obs.index >>> 6] & 1L << obs.index) != 0;
+	}
+
+}
@@ -11,11 +11,16 @@
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Bends a collection of {@link RPath Paths} around rectangular obstacles. This
@@ -31,6 +36,11 @@ import java.util.Map;
  * number of paths, n is the number of obstacles, and s is the average number of
  * segments in each path's final solution.
  * <P>
+ * An instance is not thread safe, but instances share no mutable state, so
+ * that different instances may be used from different threads at the same
+ * time. The paths and obstacles given to an instance must not be given to
+ * another.
+ * <P>
  * This class is not intended to be subclassed.
  * 
  * @author Whitney Sorenson
@@ -53,6 +63,42 @@ public class RShortestPathRouter {
 		}
 	}
 
+	/**
+	 * Solves a range of searches, splitting it until each task runs a single
+	 * search.
+	 */
+	private class SolveTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List searches;
+		private final int from, to;
+
+		SolveTask(List searches, int from, int to) {
+			this.searches = searches;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from == 1) {
+				solveSearch(searches.get(from));
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SolveTask(searches, from, middle), new SolveTask(
+					searches, middle, to));
+		}
+	}
+
+	/**
+	 * Holds the pool shared by all routers solving in parallel, created on
+	 * first use.
+	 */
+	private static class SolverPool {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
 	/**
 	 * The number of times to grow obstacles and test for intersections. This is
 	 * a tradeoff between performance and quality of output.
@@ -60,7 +106,60 @@ public class RShortestPathRouter {
 	private static final int NUM_GROW_PASSES = 2;
 
 	private int spacing = 4;
+	private boolean goalDirected;
+	private boolean lazyVisibility;
+	private boolean parallel;
+	private boolean sharedSearches;
 	private boolean growPassChangedObstacles;
+	private boolean updateBatching;
+	/**
+	 * The latest bounds of the obstacles moved since the last solve while
+	 * updates are batched, by obstacle identity, since obstacles with the
+	 * same bounds are equal.
+	 */
+	private Map pendingUpdates;
+	/** The obstacles of {@link #pendingUpdates}, in the order first moved */
+	private List pendingObstacles;
+	/** The time budget of each solve in milliseconds, 0 for no limit */
+	private long timeBudget;
+	/**
+	 * The deadline of the solve in progress, <code>null</code> between
+	 * solves. It is set and cleared while holding {@link #cancelLock}.
+	 */
+	private volatile RDeadline deadline;
+	private final Object cancelLock = new Object();
+	/**
+	 * Whether the current solve is provisional: paths are searched inside
+	 * their threshold oval only.
+	 */
+	private boolean provisional;
+	/** The paths whose search has been stopped by the deadline */
+	private List stoppedPaths;
+	/**
+	 * The largest distance by which a grown vertex has moved away from its
+	 * obstacle during the current grow pass.
+	 */
+	private int growMargin;
+	private RObstacleIndex obstacleIndex;
+	/**
+	 * The obstacles added by their bounds, keyed by a copy of the bounds. The
+	 * value is the first obstacle added with those bounds; the others are
+	 * chained through {@link RObstacle#nextWithSameBounds}.
+	 */
+	private Map obstaclesByBounds;
+	private Map obstaclesById;
+	private RPathIndex pathIndex;
+	/**
+	 * The search contexts free for the next searches, which stay valid until
+	 * an obstacle is added or removed.
+	 */
+	private List searchContexts;
+	private RSolveListener solveListener;
+	/**
+	 * The measurements of the current solve, <code>null</code> if no listener
+	 * is set.
+	 */
+	private RSolveMetrics metrics;
 	private List orderedPaths;
 	private Map pathsToChildPaths;
 
@@ -79,6 +178,14 @@ public class RShortestPathRouter {
 		workingPaths = new ArrayList();
 		pathsToChildPaths = new HashMap();
 		userObstacles = new ArrayList();
+		obstacleIndex = new RObstacleIndex(userObstacles);
+		obstaclesByBounds = new HashMap();
+		obstaclesById = new HashMap();
+		pendingUpdates = new IdentityHashMap();
+		pendingObstacles = new ArrayList();
+		pathIndex = new RPathIndex();
+		searchContexts = new ArrayList();
+		stoppedPaths = Collections.synchronizedList(new ArrayList());
 	}
 
 	/**
@@ -90,7 +197,31 @@ public class RShortestPathRouter {
 	 *         paths
 	 */
 	public boolean addObstacle(RRectangle rect) {
-		return internalAddObstacle(new RObstacle(rect, this));
+		RObstacle obs = new RObstacle(rect, this);
+		putByBounds(obs);
+		return internalAddObstacle(obs);
+	}
+
+	/**
+	 * Adds an obstacle identified by the caller. The obstacle is then moved
+	 * with {@link #updateObstacle(Object, RRectangle)} and removed with
+	 * {@link #removeObstacle(Object)}; it can not be found by its bounds.
+	 * 
+	 * @param id
+	 *            the id of the obstacle
+	 * @param rect
+	 *            the bounds of this obstacle
+	 * @return <code>true</code> if the added obstacle has dirtied one or more
+	 *         paths
+	 * @throws IllegalArgumentException
+	 *             if an obstacle with the same id exists
+	 */
+	public boolean addObstacle(Object id, RRectangle rect) {
+		if (obstaclesById.containsKey(id))
+			throw new IllegalArgumentException("Duplicate obstacle: " + id); //$NON-NLS-1$
+		RObstacle obs = new RObstacle(rect, this);
+		obstaclesById.put(id, obs);
+		return internalAddObstacle(obs);
 	}
 
 	/**
@@ -156,8 +287,10 @@ public class RShortestPathRouter {
 
 		int xDist, yDist;
 
-		for (int o = 0; o < userObstacles.size(); o++) {
-			RObstacle obs = (RObstacle) userObstacles.get(o);
+		List obstacles = obstacleIndex.query(r.x, r.y, r.right() - 1,
+				r.bottom() - 1, new ArrayList());
+		for (int o = 0; o < obstacles.size(); o++) {
+			RObstacle obs = (RObstacle) obstacles.get(o);
 			if (obs != vertex.obs && r.intersects(obs)) {
 				int pos = obs.getPosition(vertex);
 				if (pos == 0)
@@ -213,33 +346,58 @@ public class RShortestPathRouter {
 	}
 
 	/**
-	 * Counts how many paths are on given vertices in order to increment their
-	 * total count.
+	 * Records the obstacles around which each working path now bends.
 	 */
-	private void countVertices() {
+	private void recordBends() {
 		for (int i = 0; i < workingPaths.size(); i++) {
 			RPath path = (RPath) workingPaths.get(i);
-			for (int v = 0; v < path.segments.size() - 1; v++)
-				((RSegment) path.segments.get(v)).end.totalCount++;
+			releaseBends(path);
+			for (int s = 0; s < path.grownSegments.size() - 1; s++) {
+				RObstacle obs = ((RSegment) path.grownSegments.get(s)).end.obs;
+				if (obs != null && !containsIdentical(path.bendObstacles, obs)) {
+					path.bendObstacles.add(obs);
+					obs.bendingPaths.add(path);
+				}
+			}
 		}
 	}
 
 	/**
-	 * Dirties the paths that are on the given vertex
-	 * 
-	 * @param vertex
-	 *            the vertex that has the paths
+	 * Forgets the obstacles around which the path bends.
 	 */
-	private boolean dirtyPathsOn(RVertex vertex) {
-		List paths = vertex.paths;
-		if (paths != null && paths.size() != 0) {
-			for (int i = 0; i < paths.size(); i++)
-				((RPath) paths.get(i)).isDirty = true;
-			return true;
-		}
+	private void releaseBends(RPath path) {
+		for (int o = 0; o < path.bendObstacles.size(); o++)
+			((RObstacle) path.bendObstacles.get(o)).bendingPaths.remove(path);
+		path.bendObstacles.clear();
+	}
+
+	/**
+	 * Forgets a path which is no longer a working path.
+	 */
+	private void forgetPath(RPath path) {
+		pathIndex.remove(path);
+		releaseBends(path);
+	}
+
+	private static boolean containsIdentical(List list, Object o) {
+		for (int i = 0; i < list.size(); i++)
+			if (list.get(i) == o)
+				return true;
 		return false;
 	}
 
+	/**
+	 * Counts how many paths are on given vertices in order to increment their
+	 * total count.
+	 */
+	private void countVertices() {
+		for (int i = 0; i < workingPaths.size(); i++) {
+			RPath path = (RPath) workingPaths.get(i);
+			for (int v = 0; v < path.segments.size() - 1; v++)
+				((RSegment) path.segments.get(v)).end.totalCount++;
+		}
+	}
+
 	/**
 	 * Resyncs the parent paths with any new child paths that are necessary
 	 * because bendpoints have been added to the parent path.
@@ -279,6 +437,16 @@ public class RShortestPathRouter {
 			return v1;
 	}
 
+	/**
+	 * Returns the listener notified of the measurements of each solve.
+	 * 
+	 * @return the listener, or <code>null</code>
+	 * @see #setSolveListener(RSolveListener)
+	 */
+	public RSolveListener getSolveListener() {
+		return solveListener;
+	}
+
 	/**
 	 * Returns the spacing maintained between paths.
 	 * 
@@ -290,6 +458,67 @@ public class RShortestPathRouter {
 		return spacing;
 	}
 
+	/**
+	 * Returns the time budget of each solve.
+	 * 
+	 * @return the time budget in milliseconds, or 0 for no limit
+	 * @see #setTimeBudget(long)
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Returns whether paths are searched with A* instead of Dijkstra.
+	 * 
+	 * @return <code>true</code> if the search is goal directed
+	 * @see #setGoalDirected(boolean)
+	 */
+	public boolean isGoalDirected() {
+		return goalDirected;
+	}
+
+	/**
+	 * Returns whether visibility graphs are expanded on demand by the search.
+	 * 
+	 * @return <code>true</code> if the visibility graph is lazy
+	 * @see #setLazyVisibility(boolean)
+	 */
+	public boolean isLazyVisibility() {
+		return lazyVisibility;
+	}
+
+	/**
+	 * Returns whether dirty paths are solved in parallel.
+	 * 
+	 * @return <code>true</code> if paths are solved in parallel
+	 * @see #setParallel(boolean)
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Returns whether dirty paths starting at the same point are searched
+	 * together.
+	 * 
+	 * @return <code>true</code> if searches are shared
+	 * @see #setSharedSearches(boolean)
+	 */
+	public boolean isSharedSearches() {
+		return sharedSearches;
+	}
+
+	/**
+	 * Returns whether obstacle moves are batched until the next solve.
+	 * 
+	 * @return <code>true</code> if updates are batched
+	 * @see #setUpdateBatching(boolean)
+	 */
+	public boolean isUpdateBatching() {
+		return updateBatching;
+	}
+
 	/**
 	 * Returns the subpath for a split on the given path at the given segment.
 	 * 
@@ -324,15 +553,21 @@ public class RShortestPathRouter {
 	 */
 	private void growObstaclesPass() {
 		// grow obstacles
+		growMargin = 0;
 		for (int i = 0; i < userObstacles.size(); i++)
-			((RObstacle) userObstacles.get(i)).growVertices();
+			growMargin = Math.max(growMargin,
+					((RObstacle) userObstacles.get(i)).growVertices());
 
 		// go through paths and test segments
 		for (int i = 0; i < workingPaths.size(); i++) {
 			RPath path = (RPath) workingPaths.get(i);
-
-			for (int e = 0; e < path.excludedObstacles.size(); e++)
-				((RObstacle) path.excludedObstacles.get(e)).exclude = true;
+			if (deadline.isExpired()) {
+				// the remaining paths keep the bends of the previous pass
+				if (path.grownSegments.size() == 0)
+					path.grownSegments.addAll(path.segments);
+				path.isDegraded = true;
+				continue;
+			}
 
 			if (path.grownSegments.size() == 0) {
 				for (int s = 0; s < path.segments.size(); s++)
@@ -346,9 +581,6 @@ public class RShortestPathRouter {
 							(RSegment) currentSegments.get(s), s + counter, path);
 			}
 
-			for (int e = 0; e < path.excludedObstacles.size(); e++)
-				((RObstacle) path.excludedObstacles.get(e)).exclude = false;
-
 		}
 
 		// revert obstacles
@@ -363,35 +595,163 @@ public class RShortestPathRouter {
 	 *            the obstacle
 	 */
 	private boolean internalAddObstacle(RObstacle obs) {
+		applyPendingUpdates();
+		// the obstacles may now be tested in another order
+		invalidateVisibility(null);
+		clearSearchContexts();
+		obs.setIndex(userObstacles.size());
 		userObstacles.add(obs);
+		obstacleIndex.add(obs);
 		return testAndDirtyPaths(obs);
 	}
 
 	/**
-	 * Removes an obstacle from the routing.
+	 * Removes an obstacle from the routing. The last obstacle of the list
+	 * takes its place, so that no other obstacle is shifted.
 	 * 
-	 * @param rect
-	 *            the bounds of the obstacle
-	 * @return the obstacle removed
+	 * @param obs
+	 *            the obstacle
+	 * @return <code>true</code> if the removal has dirtied one or more paths
 	 */
-	private boolean internalRemoveObstacle(RRectangle rect) {
-		RObstacle obs = null;
-		int index = -1;
-		for (int i = 0; i < userObstacles.size(); i++) {
-			obs = (RObstacle) userObstacles.get(i);
-			if (obs.equals(rect)) {
-				index = i;
-				break;
+	private boolean internalRemoveObstacle(RObstacle obs) {
+		applyPendingUpdates();
+		RObstacle last = (RObstacle) userObstacles.remove(userObstacles
+				.size() - 1);
+		if (last != obs) {
+			userObstacles.set(obs.index, last);
+			last.setIndex(obs.index);
+		}
+		obstacleIndex.remove(obs);
+		invalidateVisibility(null);
+		clearSearchContexts();
+
+		return dirtyPathsAround(obs);
+	}
+
+	/**
+	 * Moves an obstacle to new bounds, or defers the move to the next solve
+	 * while updates are batched.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 * @param newBounds
+	 *            the new bounds
+	 * @return <code>true</code> if the move has dirtied one or more paths, or
+	 *         if a deferred move leaves the obstacle away from its bounds at
+	 *         the last solve
+	 */
+	private boolean internalUpdateObstacle(RObstacle obs, RRectangle newBounds) {
+		if (updateBatching) {
+			if (pendingUpdates.put(obs, new RRectangle(newBounds)) == null)
+				pendingObstacles.add(obs);
+			return !obs.equals(newBounds);
+		}
+		return moveObstacles(Collections.singletonList(obs),
+				Collections.singletonList(newBounds));
+	}
+
+	/**
+	 * Applies the moves deferred while updates are batched: each obstacle
+	 * moves at once from its bounds at the last solve to its latest bounds.
+	 */
+	private void applyPendingUpdates() {
+		if (pendingUpdates.isEmpty())
+			return;
+		List moved = new ArrayList();
+		List bounds = new ArrayList();
+		for (int i = 0; i < pendingObstacles.size(); i++) {
+			RObstacle obs = (RObstacle) pendingObstacles.get(i);
+			RRectangle newBounds = (RRectangle) pendingUpdates.get(obs);
+			if (!obs.equals(newBounds)) {
+				moved.add(obs);
+				bounds.add(newBounds);
 			}
 		}
+		pendingUpdates.clear();
+		pendingObstacles.clear();
+		if (!moved.isEmpty())
+			moveObstacles(moved, bounds);
+	}
 
-		userObstacles.remove(index);
+	/**
+	 * Moves obstacles to new bounds, dirtying the paths with a single pass
+	 * over the working paths. The obstacles keep their place in the list and
+	 * their vertices, which are moved along with them.
+	 * 
+	 * @param moved
+	 *            the obstacles
+	 * @param bounds
+	 *            the new bounds of each obstacle
+	 * @return <code>true</code> if the moves have dirtied one or more paths
+	 */
+	private boolean moveObstacles(List moved, List bounds) {
+		boolean result = false;
+		for (int o = 0; o < moved.size(); o++) {
+			RObstacle obs = (RObstacle) moved.get(o);
+			for (int p = 0; p < obs.bendingPaths.size(); p++) {
+				((RPath) obs.bendingPaths.get(p)).isDirty = true;
+				result = true;
+			}
+		}
 
+		for (int i = 0; i < workingPaths.size(); i++) {
+			RPath path = (RPath) workingPaths.get(i);
+			// paths have excluded the obstacles at their old bounds only
+			List excluded = path.excludedObstacles;
+			for (int e = excluded.size() - 1; e >= 0; e--)
+				if (containsIdentical(moved, excluded.get(e)))
+					excluded.remove(e);
+			if (path.isDirty)
+				continue;
+			for (int o = 0; o < moved.size(); o++)
+				if (path.isObstacleVisible((RObstacle) moved.get(o))) {
+					path.isDirty = result = true;
+					break;
+				}
+		}
+
+		for (int o = 0; o < moved.size(); o++) {
+			RObstacle obs = (RObstacle) moved.get(o);
+			obstacleIndex.remove(obs);
+			invalidateVisibility(obs);
+			obs.update((RRectangle) bounds.get(o));
+			invalidateVisibility(obs);
+			obstacleIndex.add(obs);
+		}
+		for (int o = 0; o < moved.size(); o++)
+			result |= testAndDirtyPaths((RObstacle) moved.get(o));
+		return result;
+	}
+
+	/**
+	 * Forgets the visibility between corners which an obstacle with the given
+	 * bounds may change. Adding or removing an obstacle may change the order
+	 * in which the obstacles crossing a segment are found, so then all the
+	 * visibility is forgotten.
+	 * 
+	 * @param bounds
+	 *            the bounds of a moved obstacle, or <code>null</code> to forget
+	 *            all the visibility
+	 */
+	private void invalidateVisibility(RRectangle bounds) {
+		for (int i = 0; i < userObstacles.size(); i++)
+			((RObstacle) userObstacles.get(i)).invalidateVisibility(bounds);
+	}
+
+	/**
+	 * Dirties the paths which bend around the given obstacle, or whose search
+	 * has seen it.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 * @return <code>true</code> if one or more paths have been dirtied
+	 */
+	private boolean dirtyPathsAround(RObstacle obs) {
 		boolean result = false;
-		result |= dirtyPathsOn(obs.bottomLeft);
-		result |= dirtyPathsOn(obs.topLeft);
-		result |= dirtyPathsOn(obs.bottomRight);
-		result |= dirtyPathsOn(obs.topRight);
+		for (int p = 0; p < obs.bendingPaths.size(); p++) {
+			((RPath) obs.bendingPaths.get(p)).isDirty = true;
+			result = true;
+		}
 
 		for (int p = 0; p < workingPaths.size(); p++) {
 			RPath path = (RPath) workingPaths.get(p);
@@ -571,12 +931,15 @@ public class RShortestPathRouter {
 			RPath path = (RPath) keyItr.next();
 
 			path.fullReset();
+			path.isDegraded = false;
 
 			List childPaths = (List) pathsToChildPaths.get(path);
 			RPath childPath = null;
 
 			for (int i = 0; i < childPaths.size(); i++) {
 				childPath = (RPath) childPaths.get(i);
+				if (childPath.isDegraded)
+					path.isDegraded = true;
 				path.points.addAll(childPath.getPoints());
 				// path will overlap
 				path.points.removePoint(path.points.size() - 1);
@@ -612,7 +975,23 @@ public class RShortestPathRouter {
 	 * @return <code>true</code> if the removal has dirtied one or more paths
 	 */
 	public boolean removeObstacle(RRectangle rect) {
-		return internalRemoveObstacle(rect);
+		return internalRemoveObstacle(takeByBounds(rect));
+	}
+
+	/**
+	 * Removes the obstacle added with the given id.
+	 * 
+	 * @param id
+	 *            the id of the obstacle to remove
+	 * @return <code>true</code> if the removal has dirtied one or more paths
+	 * @throws IllegalArgumentException
+	 *             if no obstacle has this id
+	 */
+	public boolean removeObstacle(Object id) {
+		RObstacle obs = (RObstacle) obstaclesById.remove(id);
+		if (obs == null)
+			throw new IllegalArgumentException("Unknown obstacle: " + id); //$NON-NLS-1$
+		return internalRemoveObstacle(obs);
 	}
 
 	/**
@@ -625,22 +1004,19 @@ public class RShortestPathRouter {
 	 */
 	public boolean removePath(RPath path) {
 		userPaths.remove(path);
+		path.solvedPoints = null;
 		List children = (List) pathsToChildPaths.get(path);
-		if (children == null)
+		if (children == null) {
 			workingPaths.remove(path);
-		else
+			forgetPath(path);
+		} else {
 			workingPaths.removeAll(children);
+			for (int i = 0; i < children.size(); i++)
+				forgetPath((RPath) children.get(i));
+		}
 		return true;
 	}
 
-	/**
-	 * Resets exclude field on all obstacles
-	 */
-	private void resetObstacleExclusions() {
-		for (int i = 0; i < userObstacles.size(); i++)
-			((RObstacle) userObstacles.get(i)).exclude = false;
-	}
-
 	/**
 	 * Resets all vertices found on paths and obstacles.
 	 */
@@ -656,6 +1032,132 @@ public class RShortestPathRouter {
 		}
 	}
 
+	/**
+	 * Sets whether paths are searched with A*, expanding the corners which lie
+	 * towards each path's end first. The paths found are as short as with the
+	 * default Dijkstra search, but far fewer corners are expanded for short
+	 * paths across a large diagram. The default value is <code>false</code>.
+	 * 
+	 * @param goalDirected
+	 *            <code>true</code> to search with A*
+	 */
+	public void setGoalDirected(boolean goalDirected) {
+		this.goalDirected = goalDirected;
+	}
+
+	/**
+	 * Sets whether the visibility graph of a path is expanded on demand. When
+	 * set, the visible neighbors of a corner are computed only once the search
+	 * reaches that corner, so regions the search never explores are never
+	 * built. Combined with {@link #setGoalDirected(boolean) A*}, paths which
+	 * reach their end early skip most of the segment and obstacle tests. The
+	 * graph considers every visible corner, so paths are never longer than
+	 * with the default graph. The default value is <code>false</code>.
+	 * 
+	 * @param lazyVisibility
+	 *            <code>true</code> to expand visibility graphs on demand
+	 */
+	public void setLazyVisibility(boolean lazyVisibility) {
+		this.lazyVisibility = lazyVisibility;
+	}
+
+	/**
+	 * Sets whether dirty paths are solved in parallel. Each path builds its
+	 * own visibility graph and searches it with its own state, so the paths
+	 * are solved on a shared {@link ForkJoinPool} and give the same results
+	 * as a sequential solve. The steps which space the paths apart still run
+	 * sequentially. The default value is <code>false</code>.
+	 * 
+	 * @param parallel
+	 *            <code>true</code> to solve dirty paths in parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Sets whether dirty paths which start at the same point are searched
+	 * together. A group of such paths, like the connections fanning out of one
+	 * element, is solved with a single shortest path tree from the shared
+	 * start point, over the union of the visibility graphs the paths would
+	 * build alone, instead of one search per path. The paths found are as
+	 * short as with a search of each path alone. Paths which exclude different
+	 * obstacles, because their end lies inside an obstacle, are searched apart.
+	 * The tree is not {@link #setGoalDirected(boolean) goal directed}, so with
+	 * {@link #setLazyVisibility(boolean) lazy visibility} it may expand more
+	 * corners than the paths alone. The default value is <code>false</code>.
+	 * 
+	 * @param sharedSearches
+	 *            <code>true</code> to search paths from the same start point
+	 *            together
+	 */
+	public void setSharedSearches(boolean sharedSearches) {
+		this.sharedSearches = sharedSearches;
+	}
+
+	/**
+	 * Sets whether obstacle moves are batched until the next solve, for
+	 * example while obstacles are dragged. Successive
+	 * {@link #updateObstacle(RRectangle, RRectangle) updates} of the same
+	 * obstacle then collapse into one net move, and the paths they dirty are
+	 * found once per solve, with a single pass over the paths for all moved
+	 * obstacles. An update returns <code>true</code> if the obstacle is away
+	 * from its bounds at the last solve. Adding or removing an obstacle, and
+	 * turning batching off, apply the moves batched so far. The default value
+	 * is <code>false</code>.
+	 * 
+	 * @param updateBatching
+	 *            <code>true</code> to batch obstacle moves
+	 */
+	public void setUpdateBatching(boolean updateBatching) {
+		this.updateBatching = updateBatching;
+		if (!updateBatching)
+			applyPendingUpdates();
+	}
+
+	/**
+	 * Sets the time budget of each solve. The searches and the grow passes
+	 * stop once the budget is spent, and the solve returns a best-effort
+	 * result: a path which could not be searched is a straight line, a path
+	 * which could not be fully spaced keeps its unspaced bends. Such paths are
+	 * {@link RPath#isDegraded() degraded}, and the next solve finishes them:
+	 * the paths which could not be searched stay dirty, and all paths are
+	 * spaced again. The steps which space the paths apart after the grow
+	 * passes still run in full. The default value is 0.
+	 * 
+	 * @param timeBudget
+	 *            the time budget in milliseconds, or 0 for no limit
+	 * @see #cancel()
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * Stops the solve in progress like an expired
+	 * {@link #setTimeBudget(long) time budget}. If no solve is in progress,
+	 * nothing happens: later solves are not affected. This method may be
+	 * called from any thread.
+	 */
+	public void cancel() {
+		synchronized (cancelLock) {
+			if (deadline != null)
+				deadline.cancel();
+		}
+	}
+
+	/**
+	 * Sets the listener notified at the end of each solve with the time spent
+	 * in each of its phases and the counters of its work. Solves are only
+	 * measured while a listener is set.
+	 * 
+	 * @param listener
+	 *            the listener, or <code>null</code> to stop measuring
+	 */
+	public void setSolveListener(RSolveListener listener) {
+		solveListener = listener;
+	}
+
 	/**
 	 * Sets the default spacing between paths. The spacing is the minimum
 	 * distance that path should be offset from other paths or obstacles. The
@@ -674,33 +1176,189 @@ public class RShortestPathRouter {
 	 * Updates the points in the paths in order to represent the current
 	 * solution with the given paths and obstacles.
 	 * 
-	 * @return returns the list of paths which were updated.
+	 * @return returns the list of paths whose points were changed by this
+	 *         solve, in the order the paths were added. Paths solved for the
+	 *         first time are always included.
 	 */
 	public List solve() {
+		return solve(new RDeadline(timeBudget));
+	}
+
+	/**
+	 * Solves against the given deadline, which the caller may expire to stop
+	 * this solve alone.
+	 * 
+	 * @param solveDeadline
+	 *            the deadline of the solve
+	 * @return the list of paths whose points were changed by this solve
+	 * @see #solve()
+	 */
+	List solve(RDeadline solveDeadline) {
+		applyPendingUpdates();
+		RSolveListener listener = solveListener;
+		if (listener != null)
+			metrics = new RSolveMetrics();
+		long time = metrics == null ? 0 : System.nanoTime();
+		synchronized (cancelLock) {
+			deadline = solveDeadline;
+		}
 
 		solveDirtyPaths();
+		time = endPhase(RSolveMetrics.SOLVE_DIRTY_PATHS, time);
 
 		countVertices();
+		time = endPhase(RSolveMetrics.COUNT_VERTICES, time);
 		checkVertexIntersections();
+		time = endPhase(RSolveMetrics.CHECK_VERTEX_INTERSECTIONS, time);
 		growObstacles();
+		time = endPhase(RSolveMetrics.GROW_OBSTACLES, time);
 
 		subPaths = new ArrayList();
 		stack = new PathStack();
 		labelPaths();
 		stack = null;
+		time = endPhase(RSolveMetrics.LABEL_PATHS, time);
 
 		orderedPaths = new ArrayList();
 		orderPaths();
+		time = endPhase(RSolveMetrics.ORDER_PATHS, time);
 		bendPaths();
+		time = endPhase(RSolveMetrics.BEND_PATHS, time);
 
 		recombineSubpaths();
 		orderedPaths = null;
 		subPaths = null;
+		time = endPhase(RSolveMetrics.RECOMBINE_SUBPATHS, time);
 
 		recombineChildrenPaths();
+		time = endPhase(RSolveMetrics.RECOMBINE_CHILDREN_PATHS, time);
+		recordBends();
+		List changedPaths = collectChangedPaths();
+		time = endPhase(RSolveMetrics.INDEX_PATHS, time);
 		cleanup();
+		redirtyDegradedPaths();
+		endPhase(RSolveMetrics.CLEANUP, time);
+		synchronized (cancelLock) {
+			deadline = null;
+		}
 
-		return Collections.unmodifiableList(userPaths);
+		if (listener != null) {
+			RSolveMetrics solved = metrics;
+			metrics = null;
+			listener.solved(solved);
+		}
+
+		return Collections.unmodifiableList(changedPaths);
+	}
+
+	/**
+	 * Updates the points of the dirty paths with a provisional solution, much
+	 * faster than {@link #solve()}. A dirty path whose points still join its
+	 * end points without entering any obstacle keeps them and is not searched,
+	 * which spares most of the paths an edit dirties only because they pass
+	 * near the edited obstacle. Each other dirty path is searched inside its
+	 * threshold oval only, and its points go straight from corner to corner of
+	 * the obstacles it bends around: they are neither spaced apart from other
+	 * paths nor ordered. A path not found inside its oval, or found longer than
+	 * its threshold, is a straight line or the path found. The other paths keep
+	 * their points.
+	 * <P>
+	 * The dirty paths are all {@link RPath#isDegraded() degraded}. The next
+	 * {@link #solve()} refines them: it keeps the paths found, unless an edit
+	 * has dirtied them since, searches the others again, the paths not found
+	 * inside their oval with no threshold, and post-processes them all. The
+	 * search contexts and the visibility between corners computed by this solve
+	 * are reused as well. The solve listener is not notified.
+	 * 
+	 * @return the list of paths whose points were changed by this solve, in
+	 *         the order the paths were added
+	 * @see #solve()
+	 */
+	public List solveProvisional() {
+		applyPendingUpdates();
+		RDeadline solveDeadline = new RDeadline(timeBudget);
+		synchronized (cancelLock) {
+			deadline = solveDeadline;
+		}
+
+		provisional = true;
+		List dirtyPaths = searchDirtyPaths();
+		provisional = false;
+		for (int i = 0; i < dirtyPaths.size(); i++) {
+			RPath path = (RPath) dirtyPaths.get(i);
+			path.isDegraded = true;
+			path.points.removeAllPoints();
+			path.points.addPoint(new RPoint(path.start.x, path.start.y));
+			for (int s = 0; s < path.segments.size() - 1; s++) {
+				RVertex vertex = ((RSegment) path.segments.get(s)).end;
+				path.points.addPoint(new RPoint(vertex.x, vertex.y));
+			}
+			path.points.addPoint(new RPoint(path.end.x, path.end.y));
+		}
+		resetVertices();
+
+		recombineChildrenPaths();
+		List changedPaths = collectChangedPaths();
+		cleanup();
+		redirtyStoppedPaths();
+		synchronized (cancelLock) {
+			deadline = null;
+		}
+		return Collections.unmodifiableList(changedPaths);
+	}
+
+	/**
+	 * Records the solved points of the paths, and indexes again the working
+	 * paths whose points have changed.
+	 * 
+	 * @return the user paths whose points differ from the points they had
+	 *         when they were last returned by a solve
+	 */
+	private List collectChangedPaths() {
+		List result = new ArrayList();
+		for (int i = 0; i < userPaths.size(); i++) {
+			RPath path = (RPath) userPaths.get(i);
+			boolean changed = path.recordSolvedPoints();
+			if (changed)
+				result.add(path);
+			List children = (List) pathsToChildPaths.get(path);
+			if (children == null)
+				indexSolvedPoints(path, changed);
+			else
+				for (int c = 0; c < children.size(); c++) {
+					RPath child = (RPath) children.get(c);
+					indexSolvedPoints(child, child.recordSolvedPoints());
+				}
+		}
+		if (metrics != null)
+			metrics.changedPaths = result.size();
+		return result;
+	}
+
+	/**
+	 * Indexes a working path at its solved points if they have changed, or
+	 * if it is not indexed yet.
+	 */
+	private void indexSolvedPoints(RPath path, boolean changed) {
+		if (changed || !pathIndex.contains(path))
+			pathIndex.update(path);
+	}
+
+	/**
+	 * Records the time spent in a phase of the solve, if it is measured.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @param start
+	 *            the time the phase started at
+	 * @return the time the phase ended at, which the next phase starts at
+	 */
+	private long endPhase(int phase, long start) {
+		if (metrics == null)
+			return 0;
+		long now = System.nanoTime();
+		metrics.phaseTimes[phase] += now - start;
+		return now;
 	}
 
 	/**
@@ -709,7 +1367,28 @@ public class RShortestPathRouter {
 	 * @return number of dirty paths
 	 */
 	private int solveDirtyPaths() {
-		int numSolved = 0;
+		int numSolved = searchDirtyPaths().size();
+
+		// all the paths are post-processed, those found by provisional
+		// solves included
+		for (int i = 0; i < workingPaths.size(); i++) {
+			RPath path = (RPath) workingPaths.get(i);
+			path.isProvisional = false;
+			path.resetPartial();
+		}
+		resetVertices();
+
+		if (metrics != null)
+			metrics.dirtyPaths = numSolved;
+		return numSolved;
+	}
+
+	/**
+	 * Searches the shortest paths of the dirty paths.
+	 * 
+	 * @return the paths searched, in the order of the working paths
+	 */
+	private List searchDirtyPaths() {
 
 		for (int i = 0; i < userPaths.size(); i++) {
 			RPath path = (RPath) userPaths.get(i);
@@ -731,35 +1410,323 @@ public class RShortestPathRouter {
 			refreshChildrenEndpoints(path, children);
 		}
 
+		RSearchContext.number(userObstacles);
+		List dirtyPaths = new ArrayList();
+
 		for (int i = 0; i < workingPaths.size(); i++) {
 			RPath path = (RPath) workingPaths.get(i);
+			if (!provisional)
+				path.isDegraded = false;
 			path.refreshExcludedObstacles(userObstacles);
-			if (!path.isDirty) {
-				path.resetPartial();
+			if (!path.isDirty)
+				continue;
+			if (provisional && isStillClear(path)) {
+				// searched by the next solve
+				path.isDegraded = true;
 				continue;
 			}
 
-			numSolved++;
-			path.fullReset();
+			path.isProvisional = provisional;
+			path.isGoalDirected = goalDirected;
+			path.isVisibilityLazy = lazyVisibility;
+			dirtyPaths.add(path);
+		}
+
+		// paths with the same end points, in either order, are searched once
+		List distinctPaths = new ArrayList();
+		Map sources = new HashMap();
+		Map duplicates = new HashMap();
+		for (int i = 0; i < dirtyPaths.size(); i++) {
+			RPath path = (RPath) dirtyPaths.get(i);
+			List key = Arrays.asList(new Object[] { new RPoint(path.start),
+					new RPoint(path.end) });
+			RPath source = (RPath) sources.get(key);
+			if (source == null)
+				source = (RPath) sources.get(Arrays.asList(new Object[] {
+						key.get(1), key.get(0) }));
+			if (source != null)
+				duplicates.put(path, source);
+			else {
+				sources.put(key, path);
+				distinctPaths.add(path);
+			}
+		}
+
+		List searches = sharedSearches ? groupByStart(distinctPaths)
+				: distinctPaths;
+		if (parallel && searches.size() > 1)
+			SolverPool.POOL.invoke(new SolveTask(searches, 0, searches.size()));
+		else
+			for (int i = 0; i < searches.size(); i++)
+				solveSearch(searches.get(i));
 
-			boolean pathFoundCheck = path.generateShortestPath(userObstacles);
-			if (!pathFoundCheck || path.end.cost > path.threshold) {
-				// path not found, or path found was too long
-				resetVertices();
+		for (int i = 0; i < dirtyPaths.size(); i++) {
+			RPath path = (RPath) dirtyPaths.get(i);
+			RPath source = (RPath) duplicates.get(path);
+			if (source != null) {
 				path.fullReset();
-				path.threshold = 0;
-				pathFoundCheck = path.generateShortestPath(userObstacles);
+				path.copyShortestPath(source);
+				if (path.isDegraded)
+					stoppedPaths.add(path);
 			}
+		}
+		return dirtyPaths;
+	}
 
-			resetVertices();
+	/**
+	 * Returns whether the points of a path still join its end points without
+	 * entering any obstacle it does not exclude.
+	 * 
+	 * @param path
+	 *            the path
+	 * @return <code>true</code> if the points may be kept until the path is
+	 *         searched again
+	 */
+	private boolean isStillClear(RPath path) {
+		RPointList points = path.points;
+		if (points.size() < 2 || !points.getFirstPoint().equals(path.start)
+				|| !points.getLastPoint().equals(path.end))
+			return false;
+		RRectangle bounds = points.getBounds();
+		List obstacles = obstacleIndex.query(bounds.x, bounds.y,
+				bounds.right() - 1, bounds.bottom() - 1, new ArrayList());
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
+			if (!path.excludedObstacles.contains(obs) && path.entersInside(obs))
+				return false;
 		}
+		return true;
+	}
 
-		resetObstacleExclusions();
+	/**
+	 * Groups the dirty paths which start at the same point and exclude the
+	 * same obstacles, so that each group is solved with one search.
+	 * 
+	 * @param dirtyPaths
+	 *            the dirty paths
+	 * @return the searches to run: a path searched alone, or a list of two or
+	 *         more paths searched together
+	 */
+	private static List groupByStart(List dirtyPaths) {
+		List searches = new ArrayList();
+		Map groups = new LinkedHashMap();
+		for (int i = 0; i < dirtyPaths.size(); i++) {
+			RPath path = (RPath) dirtyPaths.get(i);
+			if (path.start.equals(path.end)) {
+				searches.add(path);
+				continue;
+			}
+			List group = (List) groups.get(path.start);
+			if (group == null) {
+				group = new ArrayList();
+				groups.put(new RPoint(path.start), group);
+			}
+			group.add(path);
+		}
 
-		if (numSolved == 0)
-			resetVertices();
+		Iterator iter = groups.values().iterator();
+		while (iter.hasNext()) {
+			List group = (List) iter.next();
+			while (!group.isEmpty()) {
+				// the paths which exclude the same obstacles as the first one
+				List excluded = ((RPath) group.get(0)).excludedObstacles;
+				List shared = new ArrayList();
+				for (int i = 0; i < group.size(); i++) {
+					RPath path = (RPath) group.get(i);
+					if (shared.size() < RPath.MAX_GROUP_SIZE
+							&& path.excludedObstacles.equals(excluded)) {
+						shared.add(path);
+						group.remove(i--);
+					}
+				}
+				searches.add(shared.size() == 1 ? shared.get(0) : shared);
+			}
+		}
+		return searches;
+	}
 
-		return numSolved;
+	/**
+	 * Runs one search of {@link #groupByStart(List)}.
+	 * 
+	 * @param search
+	 *            a path, or a list of paths starting at the same point
+	 */
+	private void solveSearch(Object search) {
+		if (deadline.isExpired()) {
+			List paths = search instanceof RPath ? Collections
+					.singletonList(search) : (List) search;
+			for (int i = 0; i < paths.size(); i++) {
+				RPath path = (RPath) paths.get(i);
+				path.fullReset();
+				degradePath(path, false);
+			}
+			return;
+		}
+		if (search instanceof RPath)
+			solvePath((RPath) search);
+		else
+			solvePaths((List) search);
+	}
+
+	/**
+	 * Searches the shortest path for the given dirty path. The search only
+	 * reads the shared obstacles and vertices, so several paths may be solved
+	 * at the same time.
+	 * 
+	 * @param path
+	 *            the path
+	 */
+	private void solvePath(RPath path) {
+		path.fullReset();
+		RSearchContext ctx = obtainSearchContext();
+		ctx.begin(path);
+		boolean pathFoundCheck = path.generateShortestPath(ctx);
+		if (metrics != null)
+			metrics.addSearch(path, ctx);
+		if (!pathFoundCheck || path.cost > path.threshold) {
+			// path not found, or path found was too long
+			if (provisional || ctx.isExpired())
+				degradePath(path, pathFoundCheck);
+			else
+				solvePathWithoutThreshold(path, ctx);
+		}
+		releaseSearchContext(ctx);
+	}
+
+	/**
+	 * Searches the shortest paths for the given dirty paths, which start at
+	 * the same point and exclude the same obstacles, with a single shortest
+	 * path tree. Like {@link #solvePath(RPath)}, the paths which are not
+	 * found, or found longer than their threshold, are searched again alone
+	 * with no threshold.
+	 * 
+	 * @param paths
+	 *            the paths
+	 */
+	private void solvePaths(List paths) {
+		for (int i = 0; i < paths.size(); i++)
+			((RPath) paths.get(i)).fullReset();
+		RPath tree = new RPath(((RPath) paths.get(0)).start, null);
+		tree.isVisibilityLazy = lazyVisibility;
+		RSearchContext ctx = obtainSearchContext();
+		ctx.begin(tree.start, paths);
+		List unreached = tree.generateShortestPaths(paths, ctx);
+		if (metrics != null)
+			metrics.addSearch(tree, ctx);
+		for (int i = 0; i < paths.size(); i++) {
+			RPath path = (RPath) paths.get(i);
+			boolean found = !unreached.contains(path);
+			if (!found || path.cost > path.threshold) {
+				if (provisional || ctx.isExpired())
+					degradePath(path, found);
+				else
+					solvePathWithoutThreshold(path, ctx);
+			}
+		}
+		releaseSearchContext(ctx);
+	}
+
+	/**
+	 * Searches the shortest path for the given dirty path again, with no
+	 * threshold oval.
+	 * 
+	 * @param path
+	 *            the path
+	 * @param ctx
+	 *            the search context to reuse
+	 */
+	private void solvePathWithoutThreshold(RPath path, RSearchContext ctx) {
+		path.fullReset();
+		path.threshold = 0;
+		ctx.begin(path);
+		if (!path.generateShortestPath(ctx) && ctx.isExpired())
+			degradePath(path, false);
+		if (metrics != null) {
+			metrics.addThresholdRetry();
+			metrics.addSearch(path, ctx);
+		}
+	}
+
+	/**
+	 * Marks a path whose search has been stopped by the deadline as degraded.
+	 * 
+	 * @param path
+	 *            the path
+	 * @param found
+	 *            <code>true</code> to keep the path found inside the threshold
+	 *            oval, <code>false</code> to make the path a straight line
+	 */
+	private void degradePath(RPath path, boolean found) {
+		if (!found)
+			path.segments.clear();
+		path.isDegraded = true;
+		stoppedPaths.add(path);
+	}
+
+	/**
+	 * Prepares the next solve to finish the work this solve has left: the
+	 * paths whose search has been stopped are dirtied.
+	 */
+	private void redirtyDegradedPaths() {
+		int count = 0;
+		for (int i = 0; i < workingPaths.size(); i++)
+			if (((RPath) workingPaths.get(i)).isDegraded)
+				count++;
+		redirtyStoppedPaths();
+		if (metrics != null)
+			metrics.degradedPaths = count;
+	}
+
+	/**
+	 * Dirties the paths whose search has been stopped, so that the next solve
+	 * searches them again.
+	 */
+	private void redirtyStoppedPaths() {
+		for (int i = 0; i < stoppedPaths.size(); i++)
+			((RPath) stoppedPaths.get(i)).isDirty = true;
+		stoppedPaths.clear();
+	}
+
+	/**
+	 * Returns a search context for the current obstacles, reusing a free one
+	 * if any. Searches running at the same time each obtain their own.
+	 * 
+	 * @return the search context
+	 */
+	private RSearchContext obtainSearchContext() {
+		RSearchContext ctx = null;
+		synchronized (searchContexts) {
+			if (!searchContexts.isEmpty())
+				ctx = (RSearchContext) searchContexts.remove(searchContexts
+						.size() - 1);
+		}
+		if (ctx == null)
+			ctx = new RSearchContext(userObstacles, obstacleIndex);
+		ctx.deadline = deadline;
+		return ctx;
+	}
+
+	/**
+	 * Frees a search context obtained by {@link #obtainSearchContext()} for
+	 * the next searches.
+	 * 
+	 * @param ctx
+	 *            the search context
+	 */
+	private void releaseSearchContext(RSearchContext ctx) {
+		synchronized (searchContexts) {
+			searchContexts.add(ctx);
+		}
+	}
+
+	/**
+	 * Forgets the free search contexts, whose vertex ids no longer match the
+	 * obstacles once one is added or removed.
+	 */
+	private void clearSearchContexts() {
+		synchronized (searchContexts) {
+			searchContexts.clear();
+		}
 	}
 
 	/**
@@ -795,6 +1762,7 @@ public class RShortestPathRouter {
 		// Path used to be simple but now is compound, children is EMPTY.
 		if (currentSize == 1) {
 			workingPaths.remove(path);
+			forgetPath(path);
 			currentSize = 0;
 			children = new ArrayList(newSize);
 			pathsToChildPaths.put(path, children);
@@ -802,6 +1770,8 @@ public class RShortestPathRouter {
 		// Path is becoming simple but was compound. children becomes empty.
 		if (newSize == 1) {
 			workingPaths.removeAll(children);
+			for (int i = 0; i < children.size(); i++)
+				forgetPath((RPath) children.get(i));
 			workingPaths.add(path);
 			pathsToChildPaths.remove(path);
 			return Collections.EMPTY_LIST;
@@ -818,6 +1788,7 @@ public class RShortestPathRouter {
 		while (currentSize > newSize) {
 			RPath child = (RPath) children.remove(children.size() - 1);
 			workingPaths.remove(child);
+			forgetPath(child);
 			currentSize--;
 		}
 
@@ -837,12 +1808,17 @@ public class RShortestPathRouter {
 	 */
 	private int testOffsetSegmentForIntersections(RSegment segment, int index,
 			RPath path) {
-		for (int i = 0; i < userObstacles.size(); i++) {
-			RObstacle obs = (RObstacle) userObstacles.get(i);
+		// the offset diagonals of grown obstacles reach past their bounds
+		List obstacles = obstacleIndex.query(segment, growMargin
+				+ getSpacing(), new ArrayList());
+		for (int i = 0; i < obstacles.size(); i++) {
+			RObstacle obs = (RObstacle) obstacles.get(i);
 
 			if (segment.end.obs == obs || segment.start.obs == obs
-					|| obs.exclude)
+					|| path.excludedObstacles.contains(obs))
 				continue;
+			if (metrics != null)
+				metrics.intersectionTests++;
 			RVertex vertex = null;
 
 			int offset = getSpacing();
@@ -893,12 +1869,14 @@ public class RShortestPathRouter {
 
 				vertex.shrink();
 				checkVertexForIntersections(vertex);
-				vertex.grow();
+				growMargin = Math.max(growMargin, Math.abs(vertex.grow()));
 
 				if (vertex.nearestObstacle != 0)
 					vertex.updateOffset();
 
 				growPassChangedObstacles = true;
+				if (metrics != null)
+					metrics.growInsertions++;
 
 				if (index != -1) {
 					path.grownSegments.remove(segment);
@@ -924,8 +1902,11 @@ public class RShortestPathRouter {
 	 */
 	private boolean testAndDirtyPaths(RObstacle obs) {
 		boolean result = false;
-		for (int i = 0; i < workingPaths.size(); i++) {
-			RPath path = (RPath) workingPaths.get(i);
+		// paths which have not been solved yet are dirty already
+		List paths = pathIndex.query(obs.x, obs.y, obs.right() - 1,
+				obs.bottom() - 1, new ArrayList());
+		for (int i = 0; i < paths.size(); i++) {
+			RPath path = (RPath) paths.get(i);
 			result |= path.testAndSet(obs);
 		}
 		return result;
@@ -942,9 +1923,81 @@ public class RShortestPathRouter {
 	 *         stale
 	 */
 	public boolean updateObstacle(RRectangle oldBounds, RRectangle newBounds) {
-		boolean result = internalRemoveObstacle(oldBounds);
-		result |= addObstacle(newBounds);
+		RObstacle obs = takeByBounds(oldBounds);
+		boolean result = internalUpdateObstacle(obs, newBounds);
+		putByBounds(obs, newBounds);
 		return result;
 	}
 
+	/**
+	 * Updates the position of the obstacle added with the given id.
+	 * 
+	 * @param id
+	 *            the id of the obstacle
+	 * @param newBounds
+	 *            the new bounds
+	 * @return <code>true</code> if the change the current results to become
+	 *         stale
+	 * @throws IllegalArgumentException
+	 *             if no obstacle has this id
+	 */
+	public boolean updateObstacle(Object id, RRectangle newBounds) {
+		RObstacle obs = (RObstacle) obstaclesById.get(id);
+		if (obs == null)
+			throw new IllegalArgumentException("Unknown obstacle: " + id); //$NON-NLS-1$
+		return internalUpdateObstacle(obs, newBounds);
+	}
+
+	/**
+	 * Registers an obstacle under its bounds, after the obstacles which
+	 * already have the same bounds.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 */
+	private void putByBounds(RObstacle obs) {
+		putByBounds(obs, obs);
+	}
+
+	/**
+	 * Registers an obstacle under the given bounds, which differ from its own
+	 * while a move is deferred, after the obstacles which already have the
+	 * same bounds.
+	 * 
+	 * @param obs
+	 *            the obstacle
+	 * @param bounds
+	 *            the bounds
+	 */
+	private void putByBounds(RObstacle obs, RRectangle bounds) {
+		RObstacle first = (RObstacle) obstaclesByBounds.get(bounds);
+		if (first == null) {
+			obstaclesByBounds.put(new RRectangle(bounds), obs);
+			return;
+		}
+		while (first.nextWithSameBounds != null)
+			first = first.nextWithSameBounds;
+		first.nextWithSameBounds = obs;
+	}
+
+	/**
+	 * Unregisters the first obstacle added with the given bounds.
+	 * 
+	 * @param rect
+	 *            the bounds
+	 * @return the obstacle
+	 * @throws IllegalArgumentException
+	 *             if no obstacle has these bounds
+	 */
+	private RObstacle takeByBounds(RRectangle rect) {
+		RObstacle obs = (RObstacle) obstaclesByBounds.remove(rect);
+		if (obs == null)
+			throw new IllegalArgumentException("Unknown obstacle: " + rect); //$NON-NLS-1$
+		if (obs.nextWithSameBounds != null) {
+			obstaclesByBounds.put(new RRectangle(rect), obs.nextWithSameBounds);
+			obs.nextWithSameBounds = null;
+		}
+		return obs;
+	}
+
 }
@@ -0,0 +1,17 @@
+/**
+ * Receives the measurements of each solve of a {@link RShortestPathRouter}.
+ * 
+ * @see RShortestPathRouter#setSolveListener(RSolveListener)
+ */
+public interface RSolveListener {
+
+	/**
+	 * Called at the end of {@link RShortestPathRouter#solve()}, on the thread
+	 * which invoked it.
+	 * 
+	 * @param metrics
+	 *            the phase times and counters of the solve
+	 */
+	void solved(RSolveMetrics metrics);
+
+}
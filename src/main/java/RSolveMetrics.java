@@ -0,0 +1,227 @@
+/**
+ * The wall time spent in each phase of one {@link RShortestPathRouter#solve()
+ * solve}, together with counters of the work done by the searches and the
+ * grow passes.
+ * <P>
+ * Times are measured with {@link System#nanoTime()}. Counters which are
+ * collected by the searches include the searches retried with no threshold.
+ */
+public class RSolveMetrics {
+
+	/** Searching the shortest path of each dirty path */
+	public static final int SOLVE_DIRTY_PATHS = 0;
+	/** Counting the paths which bend around each vertex */
+	public static final int COUNT_VERTICES = 1;
+	/** Shrinking the offsets of vertices close to other obstacles */
+	public static final int CHECK_VERTEX_INTERSECTIONS = 2;
+	/** Growing the obstacles and re-testing the paths against them */
+	public static final int GROW_OBSTACLES = 3;
+	/** Labeling the paths which bend around the same vertices */
+	public static final int LABEL_PATHS = 4;
+	/** Ordering the paths around each vertex */
+	public static final int ORDER_PATHS = 5;
+	/** Offsetting the bends of each path */
+	public static final int BEND_PATHS = 6;
+	/** Joining the subpaths split by the labeling */
+	public static final int RECOMBINE_SUBPATHS = 7;
+	/** Joining the child paths of paths with bendpoints */
+	public static final int RECOMBINE_CHILDREN_PATHS = 8;
+	/** Indexing the solved points of the paths */
+	public static final int INDEX_PATHS = 9;
+	/** Freeing the state of the solve */
+	public static final int CLEANUP = 10;
+
+	private static final String[] PHASE_NAMES = { "solveDirtyPaths", //$NON-NLS-1$
+			"countVertices", "checkVertexIntersections", "growObstacles", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			"labelPaths", "orderPaths", "bendPaths", "recombineSubpaths", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"recombineChildrenPaths", "indexPaths", "cleanup" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	final long[] phaseTimes = new long[PHASE_NAMES.length];
+
+	int dirtyPaths;
+	int changedPaths;
+	long visibilityVertices;
+	long visibilityEdges;
+	long intersectionTests;
+	long expansions;
+	int thresholdRetries;
+	int growInsertions;
+	int degradedPaths;
+
+	/**
+	 * Adds the counters of a finished search.
+	 * 
+	 * @param path
+	 *            the searched path
+	 * @param ctx
+	 *            the state of the search
+	 */
+	synchronized void addSearch(RPath path, RSearchContext ctx) {
+		visibilityVertices += path.visibleVertices.size();
+		visibilityEdges += ctx.edges;
+		intersectionTests += ctx.intersectionTests;
+		expansions += ctx.expansions;
+	}
+
+	/**
+	 * Counts a search which is retried with no threshold.
+	 */
+	synchronized void addThresholdRetry() {
+		thresholdRetries++;
+	}
+
+	/**
+	 * Returns the name of a phase, which is the name of the step of the solve
+	 * it measures.
+	 * 
+	 * @param phase
+	 *            one of the phase constants
+	 * @return the name
+	 */
+	public static String getPhaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+	/**
+	 * Returns the number of phases.
+	 * 
+	 * @return the number of phases
+	 */
+	public static int getPhaseCount() {
+		return PHASE_NAMES.length;
+	}
+
+	/**
+	 * Returns the wall time spent in a phase.
+	 * 
+	 * @param phase
+	 *            one of the phase constants
+	 * @return the time in nanoseconds
+	 */
+	public long getPhaseTime(int phase) {
+		return phaseTimes[phase];
+	}
+
+	/**
+	 * Returns the wall time of the whole solve.
+	 * 
+	 * @return the time in nanoseconds
+	 */
+	public long getTotalTime() {
+		long total = 0;
+		for (int i = 0; i < phaseTimes.length; i++)
+			total += phaseTimes[i];
+		return total;
+	}
+
+	/**
+	 * Returns the number of paths searched, counting the children of paths
+	 * with bendpoints separately.
+	 * 
+	 * @return the number of dirty paths
+	 */
+	public int getDirtyPaths() {
+		return dirtyPaths;
+	}
+
+	/**
+	 * Returns the number of paths whose points were changed by the solve,
+	 * which are the paths the solve returns.
+	 * 
+	 * @return the number of changed paths
+	 */
+	public int getChangedPaths() {
+		return changedPaths;
+	}
+
+	/**
+	 * Returns the number of vertices added to the visibility graphs.
+	 * 
+	 * @return the number of vertices
+	 */
+	public long getVisibilityVertices() {
+		return visibilityVertices;
+	}
+
+	/**
+	 * Returns the number of links added to the visibility graphs.
+	 * 
+	 * @return the number of edges
+	 */
+	public long getVisibilityEdges() {
+		return visibilityEdges;
+	}
+
+	/**
+	 * Returns the number of segments tested against an obstacle, by the
+	 * searches and by the grow passes.
+	 * 
+	 * @return the number of intersection tests
+	 */
+	public long getIntersectionTests() {
+		return intersectionTests;
+	}
+
+	/**
+	 * Returns the number of vertices whose neighbors have been labeled by the
+	 * searches.
+	 * 
+	 * @return the number of expansions
+	 */
+	public long getExpansions() {
+		return expansions;
+	}
+
+	/**
+	 * Returns the number of searches which found no path, or a path longer
+	 * than their threshold, and were retried with no threshold.
+	 * 
+	 * @return the number of retries
+	 */
+	public int getThresholdRetries() {
+		return thresholdRetries;
+	}
+
+	/**
+	 * Returns the number of segments split by the grow passes to bend around
+	 * a grown obstacle.
+	 * 
+	 * @return the number of insertions
+	 */
+	public int getGrowInsertions() {
+		return growInsertions;
+	}
+
+	/**
+	 * Returns the number of paths left with a best-effort result because the
+	 * solve ran out of time or was cancelled.
+	 * 
+	 * @return the number of degraded paths
+	 * @see RPath#isDegraded()
+	 */
+	public int getDegradedPaths() {
+		return degradedPaths;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuffer buffer = new StringBuffer("RSolveMetrics(total=") //$NON-NLS-1$
+				.append(getTotalTime() / 1000).append("us"); //$NON-NLS-1$
+		for (int i = 0; i < phaseTimes.length; i++)
+			buffer.append(", ").append(PHASE_NAMES[i]).append('=') //$NON-NLS-1$
+					.append(phaseTimes[i] / 1000).append("us"); //$NON-NLS-1$
+		return buffer.append(", dirtyPaths=").append(dirtyPaths) //$NON-NLS-1$
+				.append(", changedPaths=").append(changedPaths) //$NON-NLS-1$
+				.append(", vertices=").append(visibilityVertices) //$NON-NLS-1$
+				.append(", edges=").append(visibilityEdges) //$NON-NLS-1$
+				.append(", intersectionTests=").append(intersectionTests) //$NON-NLS-1$
+				.append(", expansions=").append(expansions) //$NON-NLS-1$
+				.append(", thresholdRetries=").append(thresholdRetries) //$NON-NLS-1$
+				.append(", growInsertions=").append(growInsertions) //$NON-NLS-1$
+				.append(", degradedPaths=").append(degradedPaths) //$NON-NLS-1$
+				.append(')').toString();
+	}
+
+}
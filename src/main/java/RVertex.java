@@ -33,10 +33,7 @@ class RVertex extends RPoint {
 	static final int OUTIE = 2;
 
 	// for shortest path
-	List neighbors;
-	boolean isPermanent = false;
-	RVertex label;
-	double cost = 0;
+	int id = -1;
 
 	// for routing
 	int nearestObstacle = 0;
@@ -49,6 +46,8 @@ class RVertex extends RPoint {
 	boolean nearestObstacleChecked = false;
 	Map cachedCosines;
 	int positionOnObstacle = -1;
+	/** The visibility to the other corners, for the corner of an obstacle */
+	final RCornerVisibility visibility;
 
 	private int origX, origY;
 
@@ -68,6 +67,7 @@ class RVertex extends RPoint {
 		origX = x;
 		origY = y;
 		this.obs = obs;
+		visibility = obs == null ? null : new RCornerVisibility(this);
 	}
 
 	/**
@@ -125,6 +125,21 @@ class RVertex extends RPoint {
 		return point;
 	}
 
+	/**
+	 * Moves this vertex to a new original location, when its obstacle moves.
+	 *
+	 * @param x
+	 *            the new x coordinate
+	 * @param y
+	 *            the new y coordinate
+	 */
+	void relocate(int x, int y) {
+		this.x = x;
+		this.y = y;
+		origX = x;
+		origY = y;
+	}
+
 	/**
 	 * Resets all fields on this Vertex.
 	 */
@@ -132,14 +147,9 @@ class RVertex extends RPoint {
 		totalCount = 0;
 		type = NOT_SET;
 		count = 0;
-		cost = 0;
 		offset = getSpacing();
 		nearestObstacle = 0;
-		label = null;
 		nearestObstacleChecked = false;
-		isPermanent = false;
-		if (neighbors != null)
-			neighbors.clear();
 		if (cachedCosines != null)
 			cachedCosines.clear();
 		if (paths != null)
@@ -183,8 +193,10 @@ class RVertex extends RPoint {
 
 	/**
 	 * Grows this vertex by its offset to its maximum size.
+	 * 
+	 * @return the distance the vertex has moved on each axis
 	 */
-	void grow() {
+	int grow() {
 		int modifier;
 
 		if (nearestObstacle == 0)
@@ -200,6 +212,7 @@ class RVertex extends RPoint {
 			x += modifier;
 		else
 			x -= modifier;
+		return modifier;
 	}
 
 	/**
@@ -0,0 +1,154 @@
+/**
+ * An indexed binary min-heap of vertex ids for the shortest path search. The
+ * slot of every queued vertex is tracked in an array owned by the search, so
+ * that lowering the key of a vertex which is already queued is done in place
+ * in O(log n). Vertices with equal keys are polled in the order of their ids,
+ * so that ties between paths of equal length are broken the same way whatever
+ * the order in which the vertices were queued.
+ * 
+ * This class is for internal use only.
+ */
+class RVertexHeap {
+
+	private final int[] positions;
+	private int[] ids;
+	private double[] keys;
+	private int size;
+
+	/**
+	 * Creates a new heap.
+	 * 
+	 * @param positions
+	 *            the slot of each vertex id in the heap; slots left over by
+	 *            an earlier heap are ignored
+	 * @param capacity
+	 *            the initial capacity
+	 */
+	RVertexHeap(int[] positions, int capacity) {
+		this.positions = positions;
+		capacity = Math.max(capacity, 4);
+		ids = new int[capacity];
+		keys = new double[capacity];
+	}
+
+	/**
+	 * Returns <code>true</code> if the given vertex is queued in this heap.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @return <code>true</code> if queued
+	 */
+	boolean contains(int id) {
+		int i = positions[id];
+		return i >= 0 && i < size && ids[i] == id;
+	}
+
+	/**
+	 * Returns <code>true</code> if no vertex is queued.
+	 * 
+	 * @return <code>true</code> if empty
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes and returns the vertex with the smallest key.
+	 * 
+	 * @return the vertex id, or -1 if the heap is empty
+	 */
+	int poll() {
+		if (size == 0)
+			return -1;
+		int result = ids[0];
+		size--;
+		if (size > 0) {
+			place(ids[size], keys[size], 0);
+			siftDown(0);
+		}
+		positions[result] = -1;
+		return result;
+	}
+
+	/**
+	 * Queues the given vertex with the given key, or lowers its key if it is
+	 * already queued with a larger one.
+	 * 
+	 * @param id
+	 *            the vertex id
+	 * @param key
+	 *            the key
+	 */
+	void update(int id, double key) {
+		int i;
+		if (contains(id)) {
+			i = positions[id];
+			if (key >= keys[i])
+				return;
+		} else {
+			if (size == ids.length)
+				grow();
+			i = size++;
+		}
+		place(id, key, i);
+		siftUp(i);
+	}
+
+	private void grow() {
+		int[] oldIds = ids;
+		double[] oldKeys = keys;
+		ids = new int[size * 2];
+		keys = new double[size * 2];
+		System.arraycopy(oldIds, 0, ids, 0, size);
+		System.arraycopy(oldKeys, 0, keys, 0, size);
+	}
+
+	/**
+	 * Returns <code>true</code> if the first vertex is polled before the
+	 * second.
+	 */
+	private boolean precedes(int id, double key, int otherId, double otherKey) {
+		if (key != otherKey)
+			return key < otherKey;
+		return id < otherId;
+	}
+
+	private void place(int id, double key, int i) {
+		ids[i] = id;
+		keys[i] = key;
+		positions[id] = i;
+	}
+
+	private void siftDown(int i) {
+		int id = ids[i];
+		double key = keys[i];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size
+					&& precedes(ids[right], keys[right], ids[child],
+							keys[child]))
+				child = right;
+			if (!precedes(ids[child], keys[child], id, key))
+				break;
+			place(ids[child], keys[child], i);
+			i = child;
+		}
+		place(id, key, i);
+	}
+
+	private void siftUp(int i) {
+		int id = ids[i];
+		double key = keys[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!precedes(id, key, ids[parent], keys[parent]))
+				break;
+			place(ids[parent], keys[parent], i);
+			i = parent;
+		}
+		place(id, key, i);
+	}
+
+}
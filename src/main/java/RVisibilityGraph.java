@@ -0,0 +1,222 @@
+import java.util.Arrays;
+
+/**
+ * The visibility graph of a search, over the dense vertex ids of a
+ * {@link RSearchContext}. Edges are collected while the graph is built and
+ * then packed into compressed sparse rows: the neighbors of vertex <i>v</i>
+ * are <code>targets[rowStarts[v]]</code> to
+ * <code>targets[rowEnds[v] - 1]</code>, and the length of each edge is
+ * computed once into the matching entry of <code>weights</code>.
+ * <P>
+ * A graph is reused by the searches of its context. Like the labels of the
+ * context, the rows are stamped with the number of the search which linked
+ * their vertex, so that starting a new search only forgets the edges and
+ * rows of the previous one rather than every vertex.
+ * <P>
+ * When the graph is expanded lazily, the neighbors of the vertex being
+ * expanded are kept in a single row which is reused by every expansion.
+ *
+ * This class is for internal use only.
+ */
+class RVisibilityGraph {
+
+	private static final long EMPTY = -1L;
+
+	final int[] rowStarts;
+	final int[] rowEnds;
+	int[] targets;
+	double[] weights;
+
+	/** The row of the vertex being expanded, when expanding lazily */
+	int rowSize;
+
+	/** The search which linked each vertex */
+	private final int[] linked;
+	private int search;
+	/** The vertices linked by the current search, in the order linked */
+	private final int[] linkedIds;
+	private int linkedCount;
+
+	private int[] edgeStarts;
+	private int[] edgeEnds;
+	/** The slot of <code>keys</code> holding each edge */
+	private int[] edgeSlots;
+	private int edgeCount;
+
+	/** Open addressed set of the vertex pairs linked so far */
+	private long[] keys;
+	private int keyShift;
+
+	/**
+	 * Creates an empty graph.
+	 *
+	 * @param capacity
+	 *            the number of vertex ids of the context
+	 */
+	RVisibilityGraph(int capacity) {
+		rowStarts = new int[capacity];
+		rowEnds = new int[capacity];
+		linked = new int[capacity];
+		linkedIds = new int[capacity];
+	}
+
+	/**
+	 * Forgets the edges and rows of the previous search.
+	 */
+	void reset() {
+		if (++search == Integer.MAX_VALUE) {
+			// every stamp could match a future search
+			search = 1;
+			Arrays.fill(linked, 0);
+		}
+		linkedCount = 0;
+		for (int i = 0; i < edgeCount; i++)
+			keys[edgeSlots[i]] = EMPTY;
+		edgeCount = 0;
+		rowSize = 0;
+	}
+
+	/**
+	 * Adds an undirected edge between two vertices, unless they are already
+	 * linked.
+	 *
+	 * @param a
+	 *            the id of a vertex
+	 * @param b
+	 *            the id of another vertex
+	 * @return <code>true</code> if the edge was added
+	 */
+	boolean link(int a, int b) {
+		if (keys == null) {
+			keys = new long[64];
+			Arrays.fill(keys, EMPTY);
+			keyShift = 64 - 6;
+			edgeStarts = new int[32];
+			edgeEnds = new int[32];
+			edgeSlots = new int[32];
+		}
+		long key = a < b ? (long) a << 32 | b : (long) b << 32 | a;
+		int mask = keys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> keyShift);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+
+		if (edgeCount == edgeStarts.length) {
+			edgeStarts = Arrays.copyOf(edgeStarts, 2 * edgeCount);
+			edgeEnds = Arrays.copyOf(edgeEnds, 2 * edgeCount);
+			edgeSlots = Arrays.copyOf(edgeSlots, 2 * edgeCount);
+		}
+		edgeStarts[edgeCount] = a;
+		edgeEnds[edgeCount] = b;
+		edgeSlots[edgeCount] = slot;
+		edgeCount++;
+		addToDegree(a);
+		addToDegree(b);
+		if (2 * edgeCount > keys.length)
+			rehash();
+		return true;
+	}
+
+	/**
+	 * Counts one more edge of a vertex, in the end of its row until the graph
+	 * is packed.
+	 */
+	private void addToDegree(int id) {
+		if (linked[id] != search) {
+			linked[id] = search;
+			rowEnds[id] = 0;
+			linkedIds[linkedCount++] = id;
+		}
+		rowEnds[id]++;
+	}
+
+	private void rehash() {
+		keys = new long[2 * keys.length];
+		Arrays.fill(keys, EMPTY);
+		keyShift--;
+		int mask = keys.length - 1;
+		for (int i = 0; i < edgeCount; i++) {
+			long key = edgeStarts[i] < edgeEnds[i] ? (long) edgeStarts[i] << 32
+					| edgeEnds[i] : (long) edgeEnds[i] << 32 | edgeStarts[i];
+			int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> keyShift);
+			while (keys[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			keys[slot] = key;
+			edgeSlots[i] = slot;
+		}
+	}
+
+	/**
+	 * Packs the collected edges into rows. Each vertex lists its neighbors in
+	 * the order they were linked to it.
+	 *
+	 * @param vertices
+	 *            the vertices by id, used to compute the edge lengths
+	 */
+	void pack(RVertex[] vertices) {
+		int start = 0;
+		for (int i = 0; i < linkedCount; i++) {
+			int id = linkedIds[i];
+			int degree = rowEnds[id];
+			rowStarts[id] = rowEnds[id] = start;
+			start += degree;
+		}
+
+		if (targets == null || targets.length < 2 * edgeCount) {
+			targets = new int[Math.max(16, 2 * edgeCount)];
+			weights = new double[targets.length];
+		}
+		for (int i = 0; i < edgeCount; i++) {
+			int a = edgeStarts[i], b = edgeEnds[i];
+			double weight = vertices[a].getDistance(vertices[b]);
+			targets[rowEnds[a]] = b;
+			weights[rowEnds[a]++] = weight;
+			targets[rowEnds[b]] = a;
+			weights[rowEnds[b]++] = weight;
+		}
+	}
+
+	/**
+	 * Returns whether the vertex has been linked to any other vertex.
+	 *
+	 * @param id
+	 *            the id of the vertex
+	 * @return <code>true</code> if the vertex has neighbors
+	 */
+	boolean hasNeighbors(int id) {
+		return linked[id] == search;
+	}
+
+	/**
+	 * Empties the row of the vertex being expanded.
+	 */
+	void clearRow() {
+		if (targets == null) {
+			targets = new int[16];
+			weights = new double[16];
+		}
+		rowSize = 0;
+	}
+
+	/**
+	 * Adds a neighbor to the row of the vertex being expanded.
+	 *
+	 * @param target
+	 *            the id of the neighbor
+	 * @param weight
+	 *            the length of the edge
+	 */
+	void addToRow(int target, double weight) {
+		if (rowSize == targets.length) {
+			targets = Arrays.copyOf(targets, 2 * rowSize);
+			weights = Arrays.copyOf(weights, 2 * rowSize);
+		}
+		targets[rowSize] = target;
+		weights[rowSize++] = weight;
+	}
+
+}
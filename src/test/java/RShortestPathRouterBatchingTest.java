@@ -0,0 +1,55 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that obstacle moves batched until the next solve route like the
+ * same moves applied one at a time.
+ */
+public class RShortestPathRouterBatchingTest {
+
+	/**
+	 * Moves one of two obstacles with the same bounds twice, then solves.
+	 *
+	 * @param batching
+	 *            whether obstacle moves are batched
+	 * @return the points of every path
+	 */
+	private static int[][] moveSameBounds(boolean batching) {
+		RShortestPathRouter router = new RShortestPathRouter();
+		router.setUpdateBatching(batching);
+		router.addObstacle(new RRectangle(100, 100, 50, 50));
+		router.addObstacle(new RRectangle(100, 100, 50, 50));
+		List paths = new ArrayList();
+		int[][] ends = { { 0, 125, 500, 125 }, { 0, 325, 500, 325 },
+				{ 125, 0, 125, 500 }, { 325, 0, 325, 500 } };
+		for (int i = 0; i < ends.length; i++) {
+			RPath path = new RPath(new RPoint(ends[i][0], ends[i][1]),
+					new RPoint(ends[i][2], ends[i][3]));
+			paths.add(path);
+			router.addPath(path);
+		}
+		router.solve();
+
+		router.updateObstacle(new RRectangle(100, 100, 50, 50),
+				new RRectangle(300, 100, 50, 50));
+		router.updateObstacle(new RRectangle(100, 100, 50, 50),
+				new RRectangle(100, 300, 50, 50));
+		router.solve();
+
+		int[][] result = new int[paths.size()][];
+		for (int i = 0; i < paths.size(); i++)
+			result[i] = ((RPath) paths.get(i)).getPoints().toIntArray().clone();
+		return result;
+	}
+
+	@Test
+	public void batchedMovesOfSameBoundsObstaclesMatchDirectMoves() {
+		assertArrayEquals("points", moveSameBounds(false),
+				moveSameBounds(true));
+	}
+
+}
@@ -0,0 +1,24 @@
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link RShortestPathRouter#cancel()} stops only the solve in
+ * progress.
+ */
+public class RShortestPathRouterCancelTest {
+
+	@Test
+	public void cancelWhileIdleDoesNotStopTheNextSolve() {
+		RShortestPathRouter router = new RShortestPathRouter();
+		router.addObstacle(new RRectangle(100, 100, 50, 50));
+		RPath path = new RPath(new RPoint(0, 125), new RPoint(500, 125));
+		router.addPath(path);
+
+		router.cancel();
+		router.solve();
+
+		assertFalse("degraded", path.isDegraded());
+	}
+
+}
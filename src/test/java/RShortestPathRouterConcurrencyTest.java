@@ -0,0 +1,168 @@
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Solves separate {@link RShortestPathRouter} instances on many threads at
+ * once, and checks that every result matches the result of the same scenario
+ * solved alone.
+ */
+public class RShortestPathRouterConcurrencyTest {
+
+	private static final int SCENARIOS = 48;
+	private static final int THREADS = 16;
+	private static final int ROUNDS = 3;
+
+	/**
+	 * Routes a seeded random diagram, then moves obstacles many times, which
+	 * tests them against the solved paths, and solves again after every few
+	 * moves.
+	 *
+	 * @param seed
+	 *            the seed of the scenario
+	 * @return the points of every path after each solve
+	 */
+	private static int[][] route(long seed) {
+		Random random = new Random(seed);
+		RShortestPathRouter router = new RShortestPathRouter();
+		List obstacles = new ArrayList();
+		for (int i = 0; i < 60; i++) {
+			RRectangle bounds = new RRectangle(random.nextInt(1000),
+					random.nextInt(1000), 20 + random.nextInt(60),
+					20 + random.nextInt(60));
+			obstacles.add(bounds);
+			router.addObstacle(bounds);
+		}
+		List paths = new ArrayList();
+		for (int i = 0; i < 40; i++) {
+			RPath path = new RPath(new RPoint(random.nextInt(1100),
+					random.nextInt(1100)), new RPoint(random.nextInt(1100),
+					random.nextInt(1100)));
+			paths.add(path);
+			router.addPath(path);
+		}
+
+		List result = new ArrayList();
+		router.solve();
+		addPoints(paths, result);
+		for (int step = 0; step < 5; step++) {
+			for (int move = 0; move < 200; move++) {
+				int i = random.nextInt(obstacles.size());
+				RRectangle old = (RRectangle) obstacles.get(i);
+				RRectangle moved = new RRectangle(old.x + random.nextInt(41)
+						- 20, old.y + random.nextInt(41) - 20, old.width,
+						old.height);
+				router.updateObstacle(old, moved);
+				obstacles.set(i, moved);
+			}
+			router.solve();
+			addPoints(paths, result);
+		}
+		return (int[][]) result.toArray(new int[result.size()][]);
+	}
+
+	private static void addPoints(List paths, List result) {
+		for (int i = 0; i < paths.size(); i++)
+			result.add(((RPath) paths.get(i)).getPoints().toIntArray().clone());
+	}
+
+	/**
+	 * Tests obstacles of a seeded random diagram against a solved-like path,
+	 * and returns whether each obstacle dirties the path.
+	 */
+	private static boolean[] testObstacles(long seed, int repeats) {
+		Random random = new Random(seed);
+		RShortestPathRouter router = new RShortestPathRouter();
+		RPath path = new RPath();
+		for (int i = 0; i < 20; i++)
+			path.points.addPoint(random.nextInt(1000), random.nextInt(1000));
+		RObstacle[] obstacles = new RObstacle[50];
+		for (int i = 0; i < obstacles.length; i++)
+			obstacles[i] = new RObstacle(new RRectangle(random.nextInt(1000),
+					random.nextInt(1000), 5 + random.nextInt(30),
+					5 + random.nextInt(30)), router);
+
+		boolean[] result = new boolean[obstacles.length];
+		for (int r = 0; r < repeats; r++)
+			for (int i = 0; i < obstacles.length; i++) {
+				path.isDirty = false;
+				boolean dirtied = path.testAndSet(obstacles[i]);
+				if (r == 0)
+					result[i] = dirtied;
+				else if (result[i] != dirtied)
+					// report the mismatch through the result
+					result[i] = !result[i];
+			}
+		return result;
+	}
+
+	@Test
+	public void concurrentPathTestsMatchSerialResults() throws Exception {
+		boolean[][] expected = new boolean[SCENARIOS][];
+		for (int s = 0; s < SCENARIOS; s++)
+			expected[s] = testObstacles(s, 1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List futures = new ArrayList();
+			for (int s = 0; s < SCENARIOS; s++) {
+				final long seed = s;
+				futures.add(executor.submit(new Callable() {
+					public Object call() throws Exception {
+						start.await();
+						return testObstacles(seed, 2000);
+					}
+				}));
+			}
+			start.countDown();
+			for (int s = 0; s < SCENARIOS; s++)
+				assertArrayEquals("scenario " + s, expected[s],
+						(boolean[]) ((Future) futures.get(s)).get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void concurrentRoutersMatchSerialResults() throws Exception {
+		int[][][] expected = new int[SCENARIOS][][];
+		for (int s = 0; s < SCENARIOS; s++)
+			expected[s] = route(s);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int round = 0; round < ROUNDS; round++) {
+				final CountDownLatch start = new CountDownLatch(1);
+				List futures = new ArrayList();
+				for (int s = 0; s < SCENARIOS; s++) {
+					final long seed = s;
+					futures.add(executor.submit(new Callable() {
+						public Object call() throws Exception {
+							start.await();
+							return route(seed);
+						}
+					}));
+				}
+				start.countDown();
+				for (int s = 0; s < SCENARIOS; s++) {
+					int[][] actual = (int[][]) ((Future) futures.get(s)).get();
+					assertArrayEquals("scenario " + s + ", round " + round,
+							expected[s], actual);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}